@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import java.util.Iterator;
+
+import org.apache.wicket.markup.repeater.IItemFactory;
+import org.apache.wicket.markup.repeater.IItemReuseStrategy;
+import org.apache.wicket.markup.repeater.Item;
+import org.apache.wicket.model.IModel;
+
+/**
+ * The {@link IItemReuseStrategy} used by the appendable repeaters for appended items. Appended models are new by
+ * definition, so there is nothing to reuse: this creates a new item for each model and never looks at the existing
+ * items. Its cost only depends on the number of appended items, not on how many are already rendered.
+ * <p>
+ * The index passed to the factory just counts the new items, the appendable repeaters' factories assign the actual
+ * index themselves.
+ */
+public class AppendItemReuseStrategy implements IItemReuseStrategy
+{
+	private static final AppendItemReuseStrategy INSTANCE = new AppendItemReuseStrategy();
+
+	public static AppendItemReuseStrategy getInstance()
+	{
+		return INSTANCE;
+	}
+
+	@Override
+	public <T> Iterator<Item<T>> getItems(final IItemFactory<T> factory, final Iterator<IModel<T>> newModels,
+			final Iterator<Item<T>> existingItems)
+	{
+		return new Iterator<Item<T>>()
+		{
+			private int index = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return newModels.hasNext();
+			}
+
+			@Override
+			public Item<T> next()
+			{
+				return factory.newItem(index++, newModels.next());
+			}
+		};
+	}
+}
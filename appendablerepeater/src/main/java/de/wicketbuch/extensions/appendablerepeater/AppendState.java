@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.markup.repeater.data.IDataProvider;
+import org.apache.wicket.util.io.IClusterable;
+
+/**
+ * The bookkeeping that {@link AppendableGridView}, {@link AppendableDataView} and {@link AppendableDataTable} share
+ * for appending items: how many items were rendered, how many there are now and how many appended items are pending
+ * because of stay-on-page mode. They extend different Wicket repeaters, so they use this instead of a common base
+ * class.
+ */
+final class AppendState implements IClusterable
+{
+	/**
+	 * The number of items in the DataProvider after the last render. This is used to determine the number of new items
+	 * when appending.
+	 */
+	long lastItemCount = 0;
+
+	/**
+	 * The item count reported to <code>itemsAppended(long, AjaxRequestTarget)</code>. It is used instead of counting
+	 * all items in the DataProvider for the rest of the request, and reset on detach. -1 if unknown.
+	 */
+	long knownItemCount = -1;
+
+	/**
+	 * see {@link AppendableGridView#setStayOnPage(boolean)}
+	 */
+	boolean stayOnPage = false;
+
+	/**
+	 * The number of appended items that have not been shown because of stay-on-page mode since the last full render.
+	 */
+	long pendingItemCount = 0;
+
+	/**
+	 * @param dataProvider  the repeater's DataProvider
+	 * @param itemCounter   counts all items in the DataProvider, without any caching
+	 * @return the current number of items in the DataProvider, counting only the items after the last rendered one if
+	 * it is an {@link IAppendableDataProvider}
+	 */
+	long countItems(IDataProvider<?> dataProvider, LongSupplier itemCounter)
+	{
+		if (dataProvider instanceof IAppendableDataProvider)
+		{
+			return lastItemCount + ((IAppendableDataProvider<?>) dataProvider).countAppendedSince(lastItemCount);
+		}
+		return itemCounter.getAsLong();
+	}
+
+	/**
+	 * @return whether the items appended after the last rendered one must not be shown, because they are on a
+	 * different page than the current one and stay-on-page mode is enabled
+	 */
+	boolean keepsCurrentPage(long currentPage, long itemsPerPage)
+	{
+		return stayOnPage && lastItemCount > 0 && currentPage != lastItemCount / itemsPerPage;
+	}
+
+	/**
+	 * Record appended items that are not shown because of stay-on-page mode.
+	 *
+	 * @return the number of pending items since the last full render
+	 */
+	long addPendingItems(long count)
+	{
+		pendingItemCount += count;
+		return pendingItemCount;
+	}
+
+	/**
+	 * @param itemCounter the repeater's (cached) item count
+	 */
+	void afterRender(LongSupplier itemCounter)
+	{
+		lastItemCount = knownItemCount >= 0 ? knownItemCount : itemCounter.getAsLong();
+	}
+
+	void detach()
+	{
+		knownItemCount = -1;
+	}
+
+	/**
+	 * @param pageCounter the repeater's own page count, used if the item count is not known
+	 * @return the page count, based on the known item count if there is one
+	 */
+	long getPageCount(long itemsPerPage, LongSupplier pageCounter)
+	{
+		if (knownItemCount < 0)
+		{
+			return pageCounter.getAsLong();
+		}
+		long pageCount = knownItemCount / itemsPerPage;
+		if (pageCount * itemsPerPage < knownItemCount)
+		{
+			pageCount++;
+		}
+		return pageCount;
+	}
+
+	/**
+	 * @param viewSizer the repeater's own view size, used if the item count is not known
+	 * @return the number of items on the current page, based on the known item count if there is one
+	 */
+	long getViewSize(long itemsPerPage, long firstItemOffset, LongSupplier viewSizer)
+	{
+		if (knownItemCount < 0)
+		{
+			return viewSizer.getAsLong();
+		}
+		return Math.max(0, Math.min(itemsPerPage, knownItemCount - firstItemOffset));
+	}
+
+	/**
+	 * @return the JavaScript that creates elements for all new items after the given one in one go, so that
+	 * wicket-ajax has targets to replace
+	 */
+	static CharSequence getAppendAllScript(String lastMarkupId, List<? extends Component> newItems, String tagName)
+	{
+		final StringBuilder newItemIds = new StringBuilder();
+		for (Component item : newItems)
+		{
+			if (newItemIds.length() > 0)
+			{
+				newItemIds.append(", ");
+			}
+			newItemIds.append('\'').append(item.getMarkupId()).append('\'');
+		}
+		return String.format("AppendableListView.appendAllAfter('%s', [%s], '%s');", lastMarkupId, newItemIds,
+				tagName);
+	}
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import static de.wicketbuch.extensions.appendablerepeater.AppendableListView.SCRIPT;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.extensions.markup.html.repeater.data.grid.DataGridView;
+import org.apache.wicket.extensions.markup.html.repeater.data.grid.ICellPopulator;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.DataTable;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.IColumn;
+import org.apache.wicket.markup.MarkupStream;
+import org.apache.wicket.markup.head.IHeaderResponse;
+import org.apache.wicket.markup.head.JavaScriptHeaderItem;
+import org.apache.wicket.markup.repeater.IItemFactory;
+import org.apache.wicket.markup.repeater.Item;
+import org.apache.wicket.markup.repeater.data.IDataProvider;
+import org.apache.wicket.model.IModel;
+
+/**
+ * A {@link DataTable} that can dynamically append rows via AJAX, without repainting the entire table. Headers,
+ * toolbars and the rows that are already there stay as they are, only the new rows are rendered and inserted after
+ * the last rendered row.
+ * <p>
+ * Like with {@link AppendableGridView}, you append to your model manually and then call {@link
+ * #itemsAppended(AjaxRequestTarget)}. If the current page is full and the new rows would be on a different page, the
+ * table jumps to the first page with new rows and is repainted completely. Override {@link
+ * #onAppendRow(Item, AjaxRequestTarget)} to animate new rows and {@link #onPageChangeAfterAppend(AjaxRequestTarget)}
+ * to update toolbars that show the number of rows or pages, e.g. a navigation toolbar.
+ * <p>
+ * This needs wicket-extensions, which is an optional dependency of this library.
+ *
+ * @param <T> The row type
+ * @param <S> The type of the sort property
+ */
+public class AppendableDataTable<T, S> extends DataTable<T, S>
+{
+	/**
+	 * The row counts for appending, shared with the other appendable data repeaters.
+	 */
+	private final AppendState appendState = new AppendState();
+
+	/**
+	 * The markup id of the last row that was rendered. New rows are inserted after it.
+	 */
+	private String lastRenderedRowMarkupId;
+
+	/**
+	 * The tag used for the rows. This is lazily determined and then cached.
+	 */
+	private String rowTagName;
+
+	public AppendableDataTable(String id, List<? extends IColumn<T, S>> columns, IDataProvider<T> dataProvider,
+			long rowsPerPage)
+	{
+		super(id, columns, dataProvider, rowsPerPage);
+		// we will need to re-render the whole table when changing the current page or appending to an empty table
+		setOutputMarkupId(true);
+	}
+
+	@Override
+	protected DataGridView<T> newDataGridView(String id, List<? extends IColumn<T, S>> columns,
+			IDataProvider<T> dataProvider)
+	{
+		return new AppendableDataGridView(id, columns, dataProvider);
+	}
+
+	/**
+	 * Call this method after adding rows to the {@code DataProvider} given to this {@code AppendableDataTable}. It
+	 * will then appropriately insert the new rows via ajax. The new rows are counted like in {@link
+	 * AppendableGridView#itemsAppended(AjaxRequestTarget)}.
+	 *
+	 * @param ajax the currently active {@link AjaxRequestTarget}
+	 */
+	public void itemsAppended(AjaxRequestTarget ajax)
+	{
+		getDataGridView().itemsAppended(ajax);
+	}
+
+	/**
+	 * See {@link AppendableGridView#itemsAppended(long, AjaxRequestTarget)}.
+	 *
+	 * @param newItemCount the total number of rows in the DataProvider
+	 * @param ajax         the currently active {@link AjaxRequestTarget}
+	 */
+	public void itemsAppended(long newItemCount, AjaxRequestTarget ajax)
+	{
+		getDataGridView().itemsAppended(newItemCount, ajax);
+	}
+
+	/**
+	 * Called when appended rows do not fit on the current page, either because the table went to another page and was
+	 * repainted, or because some of the new rows overflow to the next page. The table itself does not repaint its
+	 * toolbars when it stays on the current page, so do that here if they show the number of rows or pages.
+	 *
+	 * @param ajax the currently active {@link AjaxRequestTarget}
+	 */
+	protected void onPageChangeAfterAppend(AjaxRequestTarget ajax)
+	{
+
+	}
+
+	/**
+	 * Called for each row that was inserted by {@link #itemsAppended(AjaxRequestTarget)}, e.g. to animate it.
+	 *
+	 * @param row  the new row
+	 * @param ajax the currently active {@link AjaxRequestTarget}
+	 */
+	protected void onAppendRow(Item<T> row, AjaxRequestTarget ajax)
+	{
+
+	}
+
+	@SuppressWarnings("unchecked")
+	private AppendableDataGridView getDataGridView()
+	{
+		return (AppendableDataGridView) getBody().get("rows");
+	}
+
+	@Override
+	protected void onDetach()
+	{
+		appendState.detach();
+		super.onDetach();
+	}
+
+	@Override
+	public void renderHead(IHeaderResponse response)
+	{
+		super.renderHead(response);
+		response.render(JavaScriptHeaderItem.forReference(SCRIPT));
+	}
+
+	/**
+	 * The repeater for the rows. It does the actual appending, because it has access to the paging internals.
+	 */
+	private class AppendableDataGridView extends DataGridView<T>
+	{
+		/**
+		 * DataGridView numbers the rows of each page starting at 0. We number them from the first row on the first page
+		 * instead, so appended rows can simply continue. This is the next index to use.
+		 */
+		private long nextIndex;
+
+		AppendableDataGridView(String id, List<? extends ICellPopulator<T>> populators, IDataProvider<T> dataProvider)
+		{
+			super(id, populators, dataProvider);
+		}
+
+		@Override
+		protected Item<ICellPopulator<T>> newCellItem(String id, int index, IModel<ICellPopulator<T>> model)
+		{
+			// same as DataTable's own view, so overrides of DataTable#newCellItem and #newRowItem still work
+			@SuppressWarnings({ "rawtypes", "unchecked" })
+			final Item<ICellPopulator<T>> item = AppendableDataTable.this.newCellItem(id, index, (IModel) model);
+			return item;
+		}
+
+		@Override
+		protected Item<T> newRowItem(String id, int index, IModel<T> model)
+		{
+			final Item<T> item = AppendableDataTable.this.newRowItem(id, index, model);
+			item.setOutputMarkupId(true);
+			return item;
+		}
+
+		@Override
+		protected IItemFactory<T> newItemFactory()
+		{
+			return (index, model) -> {
+				final Item<T> item = newItem(newChildId(), nextItemIndex(), model);
+				populateItem(item);
+				return item;
+			};
+		}
+
+		/**
+		 * Returns the index for the next row and advances it. Like in {@link AppendableGridView}, indexes past {@link
+		 * Integer#MAX_VALUE} are capped at it.
+		 */
+		private int nextItemIndex()
+		{
+			return (int) Math.min(nextIndex++, Integer.MAX_VALUE);
+		}
+
+		@Override
+		protected void onBeforeRender()
+		{
+			// this is a full re-render, so the rows are numbered from the first one on the current page
+			this.nextIndex = getFirstItemOffset();
+			super.onBeforeRender();
+		}
+
+		@Override
+		protected void onAfterRender()
+		{
+			super.onAfterRender();
+			appendState.afterRender(this::getItemCount);
+			lastRenderedRowMarkupId = null;
+			final Iterator<Item<T>> rows = getItems();
+			while (rows.hasNext())
+			{
+				lastRenderedRowMarkupId = rows.next().getMarkupId();
+			}
+		}
+
+		void itemsAppended(AjaxRequestTarget ajax)
+		{
+			// getItemCount may be cached, but we need an accurate count here, hence we use the internal count method
+			itemsAppended(appendState.countItems(getDataProvider(), this::internalGetItemCount), ajax);
+		}
+
+		void itemsAppended(long newItemCount, AjaxRequestTarget ajax)
+		{
+			appendState.knownItemCount = newItemCount;
+
+			final long lastItemCount = appendState.lastItemCount;
+			final long unrenderedItemCount = newItemCount - lastItemCount;
+			if (unrenderedItemCount <= 0)
+			{
+				return;
+			}
+			final long firstPageWithNewItems = lastItemCount / getItemsPerPage();
+			if (getCurrentPage() != firstPageWithNewItems || lastRenderedRowMarkupId == null)
+			{
+				// the new rows are not on the current page, or there is nothing to insert them after -> go to that
+				// page and redraw the whole table
+				AppendableDataTable.this.setCurrentPage(firstPageWithNewItems);
+				ajax.add(AppendableDataTable.this);
+				onPageChangeAfterAppend(ajax);
+				return;
+			}
+			final long availableSlotsInPage = getItemsPerPage() - lastItemCount % getItemsPerPage();
+			final Iterator<IModel<T>> models =
+					getItemModels(lastItemCount, Math.min(availableSlotsInPage, unrenderedItemCount));
+			nextIndex = lastItemCount;
+			final List<Item<T>> newRows = new ArrayList<>();
+			while (models.hasNext())
+			{
+				final Item<T> row = newItem(newChildId(), nextItemIndex(), models.next());
+				populateItem(row);
+				add(row);
+				newRows.add(row);
+			}
+			if (!newRows.isEmpty())
+			{
+				if (rowTagName == null)
+				{
+					rowTagName = new MarkupStream(newRows.get(0).getMarkup()).getTag().getName();
+				}
+				// all new rows need an element with their id in the DOM, so that wicket-ajax has a target to replace.
+				// they are inserted after the last rendered row in one go.
+				ajax.prependJavaScript(AppendState.getAppendAllScript(lastRenderedRowMarkupId, newRows, rowTagName));
+				for (Item<T> row : newRows)
+				{
+					ajax.add(row);
+					onAppendRow(row, ajax);
+				}
+				lastRenderedRowMarkupId = newRows.get(newRows.size() - 1).getMarkupId();
+			}
+			if (unrenderedItemCount > availableSlotsInPage)
+			{
+				// some of the new rows overflow to the next page
+				onPageChangeAfterAppend(ajax);
+			}
+			appendState.lastItemCount = newItemCount;
+		}
+
+		@Override
+		public long getPageCount()
+		{
+			return appendState.getPageCount(getItemsPerPage(), super::getPageCount);
+		}
+
+		@Override
+		public long getViewSize()
+		{
+			return appendState.getViewSize(getItemsPerPage(), getFirstItemOffset(), super::getViewSize);
+		}
+	}
+}
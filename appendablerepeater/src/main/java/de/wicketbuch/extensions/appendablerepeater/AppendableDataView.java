@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import static de.wicketbuch.extensions.appendablerepeater.AppendableListView.SCRIPT;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.markup.MarkupStream;
+import org.apache.wicket.markup.head.IHeaderResponse;
+import org.apache.wicket.markup.head.JavaScriptHeaderItem;
+import org.apache.wicket.markup.repeater.IItemFactory;
+import org.apache.wicket.markup.repeater.Item;
+import org.apache.wicket.markup.repeater.data.DataView;
+import org.apache.wicket.markup.repeater.data.IDataProvider;
+import org.apache.wicket.model.IModel;
+
+/**
+ * A {@link DataView} that can dynamically append items via AJAX, without
+ * repainting the entire view. This is the flat alternative to {@link
+ * AppendableGridView}: there are no row components and no empty items to fill
+ * up rows, all items are direct siblings. Lay them out as a grid with CSS,
+ * e.g. with {@code display: grid} on the parent element:
+ * <pre>
+ * &lt;div wicket:id="container" style="display: grid;
+ *         grid-template-columns: repeat(4, 1fr);"&gt;
+ *     &lt;div wicket:id="items"&gt;...&lt;/div&gt;
+ * &lt;/div&gt;
+ * </pre>
+ * This needs far fewer components than a GridView with the same number of
+ * items, and appending is a plain insertion after the last rendered item.
+ * <p>
+ * Like with {@link AppendableGridView}, you append to your model manually and
+ * then call {@link #itemsAppended(AjaxRequestTarget)}. If the current page is
+ * full and the new items would be on a different page, the view jumps to the
+ * first page with new items and is repainted. Override {@link
+ * #onAppendItem(Item, AjaxRequestTarget)} to animate new items and {@link
+ * #onPageChangeAfterAppend(AjaxRequestTarget)} to redraw pagers.
+ *
+ * @param <T> The list element type
+ */
+public abstract class AppendableDataView<T> extends DataView<T>
+{
+	/**
+	 * The item counts for appending, shared with the other appendable data
+	 * repeaters.
+	 */
+	private final AppendState appendState = new AppendState();
+
+	/**
+	 * The markup id of the last item that was rendered. New items are
+	 * inserted after it.
+	 */
+	private String lastRenderedItemMarkupId;
+
+	/**
+	 * The tag used for the items. This is lazily determined and then cached.
+	 */
+	private String itemTagName;
+
+	/**
+	 * DataView numbers the items of each page starting at 0. We number them
+	 * from the first item on the first page instead, so appended items can
+	 * simply continue. This is the next index to use.
+	 */
+	private long nextIndex;
+
+	public AppendableDataView(String id, IDataProvider<T> dataProvider)
+	{
+		super(id, dataProvider);
+	}
+
+	public AppendableDataView(String id, IDataProvider<T> dataProvider,
+	                          long itemsPerPage)
+	{
+		super(id, dataProvider, itemsPerPage);
+	}
+
+	@Override
+	protected void onInitialize()
+	{
+		super.onInitialize();
+		// we will need the parent to re-render in case we are changing the
+		// current page or are appending to a previously empty view, so we
+		// tell it to have a markup id.
+		getParent().setOutputMarkupId(true);
+	}
+
+	@Override
+	protected void onBeforeRender()
+	{
+		// this is a full re-render, so the items are numbered from the first
+		// one on the current page
+		this.nextIndex = getFirstItemOffset();
+		// ...and shows whatever is on the current page, so nothing is pending
+		// anymore
+		appendState.pendingItemCount = 0;
+		super.onBeforeRender();
+	}
+
+	@Override
+	protected Item<T> newItem(String id, int index, IModel<T> model)
+	{
+		final Item<T> item = new Item<T>(id, index, model)
+		{
+			@Override
+			protected void onRender()
+			{
+				super.onRender();
+				lastRenderedItemMarkupId = getMarkupId();
+			}
+		};
+		item.setOutputMarkupId(true);
+		return item;
+	}
+
+	@Override
+	protected IItemFactory<T> newItemFactory()
+	{
+		return (index, model) -> {
+			final Item<T> item = newItem(newChildId(), nextItemIndex(), model);
+			populateItem(item);
+			return item;
+		};
+	}
+
+	/**
+	 * Returns the index for the next item and advances it. Like in
+	 * {@link AppendableGridView}, indexes past {@link Integer#MAX_VALUE} are
+	 * capped at it.
+	 */
+	private int nextItemIndex()
+	{
+		return (int) Math.min(nextIndex++, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Call this method after adding items to the {@code DataProvider} given to
+	 * this {@code AppendableDataView}. It will then appropriately insert the
+	 * new elements via ajax. The new items are counted like in {@link
+	 * AppendableGridView#itemsAppended(AjaxRequestTarget)}.
+	 *
+	 * @param ajax the currently active {@link AjaxRequestTarget}
+	 */
+	public void itemsAppended(AjaxRequestTarget ajax)
+	{
+		// getItemCount may be cached, but we need an accurate count here,
+		// hence we use the internal count method
+		itemsAppended(appendState.countItems(getDataProvider(),
+				this::internalGetItemCount), ajax);
+	}
+
+	/**
+	 * See {@link AppendableGridView#itemsAppended(long, AjaxRequestTarget)}.
+	 *
+	 * @param newItemCount the total number of items in the DataProvider
+	 * @param ajax         the currently active {@link AjaxRequestTarget}
+	 */
+	public void itemsAppended(long newItemCount, AjaxRequestTarget ajax)
+	{
+		appendState.knownItemCount = newItemCount;
+
+		final long lastItemCount = appendState.lastItemCount;
+		final long unrenderedItemCount = newItemCount - lastItemCount;
+		if (unrenderedItemCount <= 0)
+		{
+			return;
+		}
+		final long firstPageWithNewItems = lastItemCount / getItemsPerPage();
+		if (appendState.keepsCurrentPage(getCurrentPage(), getItemsPerPage()))
+		{
+			// the new items are on a different page, but we were asked not
+			// to go there. they will be rendered when the user navigates.
+			onItemsPendingAfterAppend(
+					appendState.addPendingItems(unrenderedItemCount), ajax);
+		}
+		else if (getCurrentPage() != firstPageWithNewItems || lastItemCount == 0)
+		{
+			// the new items are not on the current page, or there is nothing
+			// to insert them after -> go to that page and redraw from parent
+			setCurrentPage(firstPageWithNewItems);
+			ajax.add(getParent());
+			onPageChangeAfterAppend(ajax);
+		}
+		else
+		{
+			final long availableSlotsInPage =
+					getItemsPerPage() - lastItemCount % getItemsPerPage();
+			final List<IModel<T>> modelList = new ArrayList<>();
+			getItemModels(lastItemCount,
+					Math.min(availableSlotsInPage, unrenderedItemCount))
+					.forEachRemaining(modelList::add);
+			preloadModels(modelList);
+			final Iterator<IModel<T>> models = modelList.iterator();
+			nextIndex = lastItemCount;
+			final List<Item<T>> newItems = new ArrayList<>();
+			while (models.hasNext())
+			{
+				final Item<T> item =
+						newItem(newChildId(), nextItemIndex(), models.next());
+				populateItem(item);
+				add(item);
+				newItems.add(item);
+			}
+			if (!newItems.isEmpty())
+			{
+				if (itemTagName == null)
+				{
+					itemTagName = new MarkupStream(newItems.get(0).getMarkup())
+							.getTag().getName();
+				}
+				// all new items need an element with their id in the DOM, so
+				// that wicket-ajax has a target to replace. they are inserted
+				// after the last rendered item in one go.
+				ajax.prependJavaScript(AppendState.getAppendAllScript(
+						lastRenderedItemMarkupId, newItems, itemTagName));
+				for (Item<T> item : newItems)
+				{
+					ajax.add(item);
+					onAppendItem(item, ajax);
+				}
+				lastRenderedItemMarkupId =
+						newItems.get(newItems.size() - 1).getMarkupId();
+			}
+			if (unrenderedItemCount > availableSlotsInPage)
+			{
+				// some of the new items overflow to the next page, so we tell
+				// the outside world to refresh its pagers if it has any.
+				onPageChangeAfterAppend(ajax);
+				if (appendState.stayOnPage)
+				{
+					onItemsPendingAfterAppend(appendState.addPendingItems(
+							unrenderedItemCount - availableSlotsInPage), ajax);
+				}
+			}
+		}
+		appendState.lastItemCount = newItemCount;
+	}
+
+	protected void onPageChangeAfterAppend(AjaxRequestTarget ajax)
+	{
+
+	}
+
+	/**
+	 * See {@link AppendableGridView#onItemsPendingAfterAppend(long,
+	 * AjaxRequestTarget)}.
+	 */
+	protected void onItemsPendingAfterAppend(long pendingItemCount,
+	                                         AjaxRequestTarget ajax)
+	{
+
+	}
+
+	/**
+	 * See {@link AppendableGridView#setStayOnPage(boolean)}.
+	 *
+	 * @param stayOnPage whether to stay on the current page when appending
+	 * @return this, for method chaining
+	 */
+	public AppendableDataView<T> setStayOnPage(boolean stayOnPage)
+	{
+		appendState.stayOnPage = stayOnPage;
+		return this;
+	}
+
+	public boolean getStayOnPage()
+	{
+		return appendState.stayOnPage;
+	}
+
+	/**
+	 * @return the number of appended items that were not shown since the
+	 * last full render, see {@link #setStayOnPage(boolean)}
+	 */
+	public long getPendingItemCount()
+	{
+		return appendState.pendingItemCount;
+	}
+
+	protected void onAppendItem(Item<T> item, AjaxRequestTarget ajax)
+	{
+
+	}
+
+	/**
+	 * See {@link AppendableGridView#getModelLoadingExecutor()}.
+	 *
+	 * @return the executor for loading models, or null to load them one by one
+	 * while rendering (the default)
+	 */
+	protected Executor getModelLoadingExecutor()
+	{
+		return null;
+	}
+
+	/**
+	 * See {@link AppendableGridView#preloadModels(List)}.
+	 *
+	 * @param models the models of the appended items
+	 */
+	protected void preloadModels(List<IModel<T>> models)
+	{
+		ParallelModelLoader.load(models, getModelLoadingExecutor());
+	}
+
+	@Override
+	protected void onAfterRender()
+	{
+		super.onAfterRender();
+		appendState.afterRender(this::getItemCount);
+	}
+
+	@Override
+	protected void onDetach()
+	{
+		appendState.detach();
+		super.onDetach();
+	}
+
+	@Override
+	public long getPageCount()
+	{
+		return appendState.getPageCount(getItemsPerPage(),
+				super::getPageCount);
+	}
+
+	@Override
+	public long getViewSize()
+	{
+		return appendState.getViewSize(getItemsPerPage(),
+				getFirstItemOffset(), super::getViewSize);
+	}
+
+	@Override
+	public void renderHead(IHeaderResponse response)
+	{
+		super.renderHead(response);
+		response.render(JavaScriptHeaderItem.forReference(SCRIPT));
+	}
+}
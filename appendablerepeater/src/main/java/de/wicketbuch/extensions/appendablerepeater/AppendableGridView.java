@@ -20,22 +20,29 @@ package de.wicketbuch.extensions.appendablerepeater;
 import static de.wicketbuch.extensions.appendablerepeater.AppendableListView.SCRIPT;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import org.apache.wicket.Component;
 import org.apache.wicket.MarkupContainer;
 import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.attributes.IAjaxCallListener;
+import org.apache.wicket.markup.ComponentTag;
 import org.apache.wicket.markup.MarkupStream;
 import org.apache.wicket.markup.head.IHeaderResponse;
 import org.apache.wicket.markup.head.JavaScriptHeaderItem;
+import org.apache.wicket.markup.head.OnDomReadyHeaderItem;
 import org.apache.wicket.markup.repeater.IItemFactory;
+import org.apache.wicket.markup.repeater.IItemReuseStrategy;
 import org.apache.wicket.markup.repeater.Item;
 import org.apache.wicket.markup.repeater.data.GridView;
 import org.apache.wicket.markup.repeater.data.IDataProvider;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.util.visit.IVisit;
 
 /**
  * A {@link GridView} implementation that can dynamically append items via AJAX,
@@ -52,6 +59,9 @@ import org.apache.wicket.request.cycle.RequestCycle;
  * is "full" and new items would be added to a different page, no new
  * elements will be inserted on this page - instead, the {@code
  * AppendableGridView} will jump to the first page with new elements.
+ * Removing works the same way: remove from your model and call {@link
+ * #itemsRemoved(long, long, AjaxRequestTarget)}, and only the cells after the
+ * removed items are redrawn.
  * <p>
  * To facilitate animations and other things, this class offers the following
  * callbacks:
@@ -69,6 +79,15 @@ import org.apache.wicket.request.cycle.RequestCycle;
  * no new elements are added on the current page but instead the page
  * is changed to where new elements have appeared.
  * </li>
+ * <li>
+ * {@link #onPageChangeAfterRemove(AjaxRequestTarget)} is called when
+ * removing items changed the number of pages or the current page.
+ * </li>
+ * <li>
+ * {@link #onItemsPendingAfterAppend(long, AjaxRequestTarget)} is called
+ * instead of changing the page if {@link #setStayOnPage(boolean)} is
+ * enabled.
+ * </li>
  * </ul>
  *
  * @param <T> The list element type
@@ -78,12 +97,11 @@ public abstract class AppendableGridView<T> extends GridView<T>
 {
 	/**
 	 * Contains the empty items that were used to fill up non-complete rows
-	 * during the last render. These will be used to display new items in
+	 * during the last render, in the order they were rendered in. These will be used to display new items in
 	 * {@link #itemsAppended(AjaxRequestTarget)}. The empty items are never
 	 * stale because they are recreated on each rendering.
 	 */
-	private final SortedMap<Integer, AppendableItem> renderedEmptyItems = new
-			TreeMap<>();
+	private final List<AppendableItem> renderedEmptyItems = new ArrayList<>();
 
 	/**
 	 * @see #onBeforeRender()
@@ -123,11 +141,10 @@ public abstract class AppendableGridView<T> extends GridView<T>
 	private long preExistingItems = 0;
 
 	/**
-	 * The number of items in the DataProvider after the last render. This is
-	 * used to determine the number of new items in
-	 * {@link #itemsAppended(AjaxRequestTarget)}.
+	 * The item counts for appending, shared with the other appendable data
+	 * repeaters.
 	 */
-	private long lastItemCount = 0;
+	private final AppendState appendState = new AppendState();
 
 	/**
 	 * The tag used for the row items. This is lazily determined and then
@@ -149,7 +166,69 @@ public abstract class AppendableGridView<T> extends GridView<T>
 	 * current page, and in {@link #itemsAppended(AjaxRequestTarget)} for
 	 * AJAX appends.
 	 */
-	private int nextIndex;
+	private long nextIndex;
+
+	/**
+	 * The callback for populating placeholder items, see {@link
+	 * #setLazyHydration(boolean)}. null if lazy hydration is disabled.
+	 */
+	private LazyHydrationBehavior hydrationBehavior;
+
+	/**
+	 * Whether {@link #itemsAppended(AjaxRequestTarget)} is adding items with
+	 * lazy hydration enabled, so the new items become placeholders instead of
+	 * being populated.
+	 */
+	private boolean deferPopulation;
+
+	/**
+	 * The callback for the client page cache, see {@link
+	 * #setClientPageCacheSize(int)}. null if the cache is disabled.
+	 */
+	private ClientPageCacheBehavior pageCacheBehavior;
+
+	/**
+	 * Set when the client has shown a page from its cache. The items we have
+	 * then belong to a different page than the one in the browser, so they
+	 * must not be updated incrementally until the next full render.
+	 */
+	private boolean renderedPageStale = false;
+
+	/**
+	 * The callback that loads more rows in continuous mode, see {@link
+	 * #setContinuous(boolean)}. null if continuous mode is disabled.
+	 */
+	private LoadMoreBehavior loadMoreBehavior;
+
+	/**
+	 * In continuous mode, the number of rows that are loaded at a time. This
+	 * is the number of rows the grid had when continuous mode was enabled.
+	 */
+	private int rowsPerLoad;
+
+	/**
+	 * see {@link #setMaxRetainedRows(int)}
+	 */
+	private int maxRetainedRows = 0;
+
+	/**
+	 * In continuous mode, the index of the first item that has not been
+	 * evicted, see {@link #setMaxRetainedRows(int)}.
+	 */
+	private long firstRetainedItem = 0;
+
+	/**
+	 * The items that are being loaded in the background, see {@link
+	 * #getPrefetchExecutor()}, and the index of the first one.
+	 */
+	private transient CompletableFuture<List<T>> prefetch;
+
+	private long prefetchFirst;
+
+	/**
+	 * see {@link #setRowRepaintThreshold(double)}
+	 */
+	private double rowRepaintThreshold = 0.5;
 
 	public AppendableGridView(String id, IDataProvider<T> dataProvider)
 	{
@@ -173,13 +252,15 @@ public abstract class AppendableGridView<T> extends GridView<T>
 		// so everything can be numbered correctly.
 		// this needs to happen before super.onBeforeRender, so the items
 		// created by super can get the correct index.
-		this.nextIndex = (int) (getCurrentPage() * getItemsPerPage());
-		if (nextIndex < 0)
-		{
-			// overflowing to more than maxint elements? we're in trouble
-			// anyway.
-			nextIndex = 0;
-		}
+		this.nextIndex = getFirstItemOffset();
+
+		// a full render always populates all items.
+		deferPopulation = false;
+
+		// a full render shows whatever is on the current page, so nothing is
+		// pending anymore
+		appendState.pendingItemCount = 0;
+		renderedPageStale = false;
 
 		// let super create all the needed items.
 		super.onBeforeRender();
@@ -245,6 +326,22 @@ public abstract class AppendableGridView<T> extends GridView<T>
 		return new AppendableItem(id, index, model);
 	}
 
+	/**
+	 * Create an item for the given index, which can be larger than an int.
+	 * This calls {@link #newItem(String, int, IModel)}, so override that one
+	 * to create your own items. Their {@link Item#getIndex() index} is capped
+	 * at {@link Integer#MAX_VALUE}, {@link AppendableItem#getItemIndex()}
+	 * returns the full one.
+	 */
+	protected final AppendableItem newItem(String id, long index,
+	                                       IModel<T> model)
+	{
+		final AppendableItem item =
+				newItem(id, (int) Math.min(index, Integer.MAX_VALUE), model);
+		item.itemIndex = index;
+		return item;
+	}
+
 	/**
 	 * Create a new RowItem. You won't normally need to override this.
 	 * <strong>Warning:</strong> Due to superclass limitations, the index
@@ -267,10 +364,10 @@ public abstract class AppendableGridView<T> extends GridView<T>
 			public Item<T> newItem(int index, IModel<T> model)
 			{
 				String id = AppendableGridView.this.newChildId();
-				Item<T> item = AppendableGridView.this.newItem(id,
+				AppendableItem item = AppendableGridView.this.newItem(id,
 						AppendableGridView.this.nextIndex, model);
 				AppendableGridView.this.nextIndex += 1;
-				AppendableGridView.this.populateItem(item);
+				populateOrDefer(item);
 
 				return item;
 			}
@@ -278,31 +375,476 @@ public abstract class AppendableGridView<T> extends GridView<T>
 
 	}
 
+	/**
+	 * Return the {@link IItemReuseStrategy} used to create the items in new
+	 * rows when appending. The {@link #getItemReuseStrategy() regular one} is
+	 * still used when rendering the whole page. Appended models are always
+	 * new, so the default {@link AppendItemReuseStrategy} does not look at
+	 * the existing items at all.
+	 */
+	protected IItemReuseStrategy getAppendItemReuseStrategy()
+	{
+		return AppendItemReuseStrategy.getInstance();
+	}
+
+	/**
+	 * Remembers an empty item that was rendered, so it can be filled when
+	 * appending. Only a few cells of the last row can be empty, so looking
+	 * for duplicates is cheap.
+	 */
+	private void recordEmptyItem(AppendableItem emptyItem)
+	{
+		if (!renderedEmptyItems.contains(emptyItem))
+		{
+			renderedEmptyItems.add(emptyItem);
+		}
+	}
+
+	/**
+	 * Populates a new item, or, if we are appending with lazy hydration,
+	 * turns it into a placeholder to be populated later.
+	 */
+	private void populateOrDefer(AppendableItem item)
+	{
+		if (deferPopulation)
+		{
+			item.placeholder = true;
+		}
+		else
+		{
+			populateItem(item);
+		}
+	}
+
+	/**
+	 * Render items that are appended via
+	 * {@link #itemsAppended(AjaxRequestTarget)} as lightweight placeholders
+	 * first, and only populate them via {@link #populateItem(Item)} once they
+	 * become visible in the browser. All items that become visible at the same
+	 * time are populated and rendered in one AJAX request. This is useful for
+	 * items with expensive content.
+	 * <p>
+	 * This only applies to items that are inserted into the current page. If
+	 * appending causes a full repaint, e.g. because the grid jumps to a new
+	 * page, all items are populated as usual. What the placeholders look like
+	 * is determined by {@link #getPlaceholderMarkup(AppendableItem)}.
+	 *
+	 * @param lazyHydration whether to render appended items as placeholders
+	 *                      first
+	 * @return this, for method chaining
+	 */
+	public AppendableGridView<T> setLazyHydration(boolean lazyHydration)
+	{
+		if (lazyHydration && hydrationBehavior == null)
+		{
+			hydrationBehavior = new LazyHydrationBehavior()
+			{
+				@Override
+				protected void hydrate(Set<String> markupIds,
+				                       AjaxRequestTarget ajax)
+				{
+					visitChildren(AppendableItem.class,
+							(AppendableItem item, IVisit<Void> visit) ->
+							{
+								if (item.placeholder && markupIds.contains(
+										item.getMarkupId()))
+								{
+									item.placeholder = false;
+									populateItem(item);
+									ajax.add(item);
+								}
+								visit.dontGoDeeper();
+							});
+				}
+			};
+			add(hydrationBehavior);
+		}
+		else if (!lazyHydration && hydrationBehavior != null)
+		{
+			remove(hydrationBehavior);
+			hydrationBehavior = null;
+		}
+		return this;
+	}
+
+	public boolean getLazyHydration()
+	{
+		return hydrationBehavior != null;
+	}
+
+	/**
+	 * Let the browser keep the content of up to this many recently shown
+	 * pages, so going back to one of them is instant and does not need a
+	 * server round trip. Only the new current page is sent to the server, so
+	 * it can continue from there. Cached pages are dropped when {@link
+	 * #itemsAppended(AjaxRequestTarget)} or {@link #itemsRemoved(long, long,
+	 * AjaxRequestTarget)} change them. If the data changes in any other way,
+	 * call {@link #invalidateClientPageCache(AjaxRequestTarget)}.
+	 * <p>
+	 * The cache is only used by paging links that ask for it via {@link
+	 * #getClientPageCacheListener(long)}, like the ones of {@link
+	 * AppendablePagingNavigator}. It holds the content of the parent of this
+	 * view, so the navigator should be inside of it, otherwise it will not
+	 * be updated when a cached page is shown.
+	 * <p>
+	 * The items are recreated for every page, so links and AJAX callbacks in
+	 * a cached page would go to items that no longer exist on the server.
+	 * Pages with stateful items, i.e. items containing such components or
+	 * behaviors, are therefore not cached. Only use the cache for items
+	 * that are stateless, e.g. that only show data and bookmarkable links.
+	 *
+	 * @param maxCachedPages the number of pages to keep in the browser, 0 to
+	 *                       disable the cache (the default)
+	 * @return this, for method chaining
+	 */
+	public AppendableGridView<T> setClientPageCacheSize(int maxCachedPages)
+	{
+		if (pageCacheBehavior != null)
+		{
+			remove(pageCacheBehavior);
+			pageCacheBehavior = null;
+		}
+		if (maxCachedPages > 0)
+		{
+			pageCacheBehavior = new ClientPageCacheBehavior(maxCachedPages)
+			{
+				@Override
+				protected void onPageShown(long page)
+				{
+					if (page < getPageCount())
+					{
+						setCurrentPage(page);
+						renderedPageStale = true;
+					}
+				}
+			};
+			add(pageCacheBehavior);
+		}
+		return this;
+	}
+
+	public int getClientPageCacheSize()
+	{
+		return pageCacheBehavior == null ? 0 : pageCacheBehavior.getMaxPages();
+	}
+
+	/**
+	 * Add the returned listener to the ajax attributes of a link that goes to
+	 * the given page, and the link will show that page from the client cache
+	 * if it is there. See {@link #setClientPageCacheSize(int)}.
+	 *
+	 * @param page the page the link goes to
+	 * @return the listener, or null if the client page cache is disabled
+	 */
+	public IAjaxCallListener getClientPageCacheListener(long page)
+	{
+		if (pageCacheBehavior == null)
+		{
+			return null;
+		}
+		return ClientPageCacheBehavior.newPreconditionListener(
+				getParent().getMarkupId(), page);
+	}
+
+	/**
+	 * Drop all pages from the client cache, e.g. because items were changed.
+	 * See {@link #setClientPageCacheSize(int)}.
+	 *
+	 * @param ajax the currently active {@link AjaxRequestTarget}
+	 */
+	public void invalidateClientPageCache(AjaxRequestTarget ajax)
+	{
+		if (pageCacheBehavior != null)
+		{
+			ajax.appendJavaScript(ClientPageCacheBehavior
+					.getInvalidateScript(getParent().getMarkupId(), 0));
+		}
+	}
+
+	/**
+	 * Switch to continuous mode, for infinite scrolling instead of paging.
+	 * Whenever the last row scrolls into view, the next {@link #getRows()
+	 * rows} worth of items are appended as new rows, the same way {@link
+	 * #itemsAppended(AjaxRequestTarget)} appends them. The grid then always
+	 * stays on its first page, which grows as more rows are loaded. Use
+	 * {@link #setMaxRetainedRows(int)} to limit how many rows are kept.
+	 * <p>
+	 * In continuous mode, {@link #itemsAppended(AjaxRequestTarget)} only
+	 * fills up the rows that are already loaded, further items are loaded
+	 * when the user scrolls down. The browser reports visible rows via
+	 * IntersectionObserver. For browsers without it, call {@link
+	 * #loadMore(AjaxRequestTarget)} yourself, e.g. from a "more" button.
+	 *
+	 * @param continuous whether to load more rows when scrolling down
+	 * @return this, for method chaining
+	 */
+	public AppendableGridView<T> setContinuous(boolean continuous)
+	{
+		if (continuous && loadMoreBehavior == null)
+		{
+			rowsPerLoad = getRows();
+			firstRetainedItem = 0;
+			loadMoreBehavior = new LoadMoreBehavior()
+			{
+				@Override
+				protected void loadMore(AjaxRequestTarget ajax)
+				{
+					AppendableGridView.this.loadMore(ajax);
+				}
+			};
+			add(loadMoreBehavior);
+		}
+		else if (!continuous && loadMoreBehavior != null)
+		{
+			remove(loadMoreBehavior);
+			loadMoreBehavior = null;
+			firstRetainedItem = 0;
+			setRows(rowsPerLoad);
+		}
+		return this;
+	}
+
+	public boolean getContinuous()
+	{
+		return loadMoreBehavior != null;
+	}
+
+	/**
+	 * In continuous mode (see {@link #setContinuous(boolean)}), keep at most
+	 * this many rows. When more rows are loaded, the oldest ones are removed
+	 * from the browser and from the component tree, so neither grows without
+	 * bounds. The value is raised to the number of rows loaded at a time if
+	 * it is lower.
+	 *
+	 * @param maxRetainedRows the maximum number of rows to keep, 0 for no
+	 *                        limit (the default)
+	 * @return this, for method chaining
+	 */
+	public AppendableGridView<T> setMaxRetainedRows(int maxRetainedRows)
+	{
+		this.maxRetainedRows = maxRetainedRows;
+		return this;
+	}
+
+	public int getMaxRetainedRows()
+	{
+		return maxRetainedRows;
+	}
+
+	/**
+	 * In continuous mode, append the next rows after the last rendered one.
+	 * This is called automatically when the last row scrolls into view, see
+	 * {@link #setContinuous(boolean)}.
+	 *
+	 * @param ajax the currently active {@link AjaxRequestTarget}
+	 */
+	public void loadMore(AjaxRequestTarget ajax)
+	{
+		if (loadMoreBehavior == null)
+		{
+			return;
+		}
+		final long itemCount = countItems();
+		// changing the rows recalculates the page count, which can use this
+		// instead of counting again
+		appendState.knownItemCount = itemCount;
+		if (itemCount > getFirstItemOffset() + getItemsPerPage())
+		{
+			// there are more items than fit in the rows we have, so make
+			// room for the next ones
+			setRows(getRows() + rowsPerLoad);
+		}
+		appendToWindow(itemCount, ajax);
+		evictRows(ajax);
+	}
+
+	/**
+	 * In continuous mode, render the items that fit in the current rows and
+	 * have not been rendered yet.
+	 */
+	private void appendToWindow(long itemCount, AjaxRequestTarget ajax)
+	{
+		final long newItemCount = Math.min(itemCount,
+				getFirstItemOffset() + getItemsPerPage());
+		appendState.knownItemCount = newItemCount;
+		if (newItemCount <= appendState.lastItemCount)
+		{
+			return;
+		}
+		final long renderedItemCount =
+				appendState.lastItemCount - getFirstItemOffset();
+		if (renderedItemCount <= 0)
+		{
+			// nothing rendered yet, so there is nothing to append to
+			ajax.add(getParent());
+		}
+		else
+		{
+			long renderedRowCount = renderedItemCount / getColumns();
+			if (renderedItemCount % getColumns() > 0)
+			{
+				renderedRowCount += 1;
+			}
+			appendOnCurrentPage(getItemsPerPage() - renderedItemCount,
+					newItemCount - appendState.lastItemCount,
+					getRows() - renderedRowCount, ajax);
+			if (itemCount > newItemCount)
+			{
+				// there is more, so watch the new last row. if it is
+				// visible right away, the next rows are loaded right away.
+				ajax.appendJavaScript(loadMoreBehavior
+						.getObserveScript(lastRenderedRowMarkupId));
+			}
+		}
+		appendState.lastItemCount = newItemCount;
+		appendedRows = null;
+		appendedItems = null;
+		if (renderedItemCount > 0)
+		{
+			startPrefetch(itemCount);
+		}
+	}
+
+	/**
+	 * In continuous mode, remove the oldest rows that exceed {@link
+	 * #setMaxRetainedRows(int)}.
+	 */
+	private void evictRows(AjaxRequestTarget ajax)
+	{
+		if (maxRetainedRows <= 0)
+		{
+			return;
+		}
+		final List<Component> rows = new ArrayList<>();
+		for (Component row : this)
+		{
+			rows.add(row);
+		}
+		final int evictedRowCount =
+				rows.size() - Math.max(maxRetainedRows, rowsPerLoad);
+		if (evictedRowCount <= 0)
+		{
+			return;
+		}
+		for (Component row : rows.subList(0, evictedRowCount))
+		{
+			ajax.prependJavaScript(String.format(
+					"AppendableListView.removeItem('%s');",
+					row.getMarkupId()));
+			remove(row);
+		}
+		// the rendered items stay where they are, they just start later now
+		firstRetainedItem += (long) evictedRowCount * getColumns();
+		setRows(getRows() - evictedRowCount);
+	}
+
+	/**
+	 * When {@link #itemsAppended(AjaxRequestTarget)} fills the empty cells of
+	 * the last row, it either replaces each of these cells via ajax, or
+	 * re-renders the whole row once. The row is re-rendered if more than
+	 * this fraction of its cells changes. The default is 0.5, i.e. the row is
+	 * re-rendered if more than half of its cells are filled. Set this to 1 to
+	 * always replace single cells, or to 0 to always re-render the row.
+	 *
+	 * @param rowRepaintThreshold the fraction of a row's cells that must
+	 *                            change for the row to be re-rendered
+	 * @return this, for method chaining
+	 */
+	public AppendableGridView<T> setRowRepaintThreshold(
+			double rowRepaintThreshold)
+	{
+		this.rowRepaintThreshold = rowRepaintThreshold;
+		return this;
+	}
+
+	public double getRowRepaintThreshold()
+	{
+		return rowRepaintThreshold;
+	}
+
+	/**
+	 * The markup that is rendered as the body of a placeholder item, see
+	 * {@link #setLazyHydration(boolean)}. Placeholders should take up roughly
+	 * the same space as the real items. The default is an empty body, so you
+	 * will want to either override this or give the placeholders a size via
+	 * CSS.
+	 *
+	 * @param item the placeholder item
+	 * @return the body markup for the placeholder
+	 */
+	protected CharSequence getPlaceholderMarkup(AppendableItem item)
+	{
+		return "";
+	}
+
 	/**
 	 * Call this method after adding items to the {@code DataProvider} given to
 	 * this {@code AppendableGridView}. It will then appropriately insert the
 	 * new elements via ajax.
+	 * <p>
+	 * To find out how many items there are now, this asks the DataProvider for
+	 * its {@link IDataProvider#size() size}, unless it is an {@link
+	 * IAppendableDataProvider}, in which case only the newly appended items
+	 * are counted. If you already know the new item count, use {@link
+	 * #itemsAppended(long, AjaxRequestTarget)} instead.
 	 *
 	 * @param ajax the currently active {@link AjaxRequestTarget}
 	 */
 	public void itemsAppended(AjaxRequestTarget ajax)
+	{
+		itemsAppended(countItems(), ajax);
+	}
+
+	/**
+	 * @return the current number of items in the DataProvider, counting only
+	 * the items after the last rendered one if possible
+	 */
+	private long countItems()
 	{
 		// getItemCount may be cached, but we need an accurate count here,
 		// hence we use the internal count method
-		final long newItemCount = internalGetItemCount();
+		return appendState.countItems(getDataProvider(),
+				this::internalGetItemCount);
+	}
+
+	/**
+	 * Like {@link #itemsAppended(AjaxRequestTarget)}, but with the new total
+	 * number of items given by the caller, e.g. because it just inserted a
+	 * known number of items. The DataProvider will not be asked for its size
+	 * for the rest of this request.
+	 *
+	 * @param newItemCount the total number of items in the DataProvider
+	 * @param ajax         the currently active {@link AjaxRequestTarget}
+	 */
+	public void itemsAppended(long newItemCount, AjaxRequestTarget ajax)
+	{
+		if (loadMoreBehavior != null)
+		{
+			appendToWindow(newItemCount, ajax);
+			return;
+		}
+		appendState.knownItemCount = newItemCount;
 
 		// only do anything if we actually have new items:
-		long unrenderedItemCount = newItemCount - lastItemCount;
+		final long unrenderedItemCount =
+				newItemCount - appendState.lastItemCount;
 		if (unrenderedItemCount > 0)
 		{
 			final long firstPageWithNewItems =
-					lastItemCount / getItemsPerPage();
+					appendState.lastItemCount / getItemsPerPage();
+			if (pageCacheBehavior != null)
+			{
+				// appended items only change the last pages
+				ajax.appendJavaScript(ClientPageCacheBehavior
+						.getInvalidateScript(getParent().getMarkupId(),
+								firstPageWithNewItems));
+			}
 			final long itemCountOnLastPage =
-					lastItemCount % getItemsPerPage();
+					appendState.lastItemCount % getItemsPerPage();
 			final long lastRowCount;
 			{
-				long rowCount = lastItemCount / getColumns();
-				if (lastItemCount % getColumns() > 0)
+				long rowCount = appendState.lastItemCount / getColumns();
+				if (appendState.lastItemCount % getColumns() > 0)
 				{
 					// partial rows count too:
 					rowCount += 1;
@@ -315,7 +857,7 @@ public abstract class AppendableGridView<T> extends GridView<T>
 			final long rowCountOnLastPage;
 			{
 				long count = lastRowCount % getRows();
-				if (count == 0 && lastItemCount > 0)
+				if (count == 0 && appendState.lastItemCount > 0)
 				{
 					// no partially filled page means the last page was full
 					// of rows! unless there were no items at all, then there
@@ -330,10 +872,20 @@ public abstract class AppendableGridView<T> extends GridView<T>
 			final long unusedRowsOnLastPage = getRows() -
 					rowCountOnLastPage;
 
-			if (getCurrentPage() != firstPageWithNewItems || lastItemCount == 0)
+			if (appendState.keepsCurrentPage(getCurrentPage(),
+					getItemsPerPage()))
+			{
+				// the new items are on a different page, but we were asked not
+				// to go there. they will be rendered when the user navigates.
+				onItemsPendingAfterAppend(appendState
+						.addPendingItems(unrenderedItemCount), ajax);
+			}
+			else if (getCurrentPage() != firstPageWithNewItems ||
+					appendState.lastItemCount == 0 || renderedPageStale)
 			{
 				// we are not on the first page that contains new items
-				// -> just go to that page
+				// (or the browser shows a cached page we don't have the
+				// items for) -> just go to that page
 				setCurrentPage(firstPageWithNewItems);
 
 				appending = true;
@@ -359,113 +911,330 @@ public abstract class AppendableGridView<T> extends GridView<T>
 				// let's add them here
 
 				// this many slots can receive new items
-				long availableSlotsInPage =
+				final long availableSlotsInPage =
 						getItemsPerPage() - itemCountOnLastPage;
 
-				// partially-filled rows are filled with empty items. we can
-				// target them individually with regular Wicket ajax, no
-				// other javascript shenanigans are needed.
-				final Iterator<AppendableItem> emptyItemsToReplace =
-						renderedEmptyItems.values().iterator();
+				appendOnCurrentPage(availableSlotsInPage, unrenderedItemCount,
+						unusedRowsOnLastPage, ajax);
 
-				final int availableSlotsInLastRow = renderedEmptyItems.size();
+				if (unrenderedItemCount > availableSlotsInPage)
+				{
+					// we have added items on the current page, but there are
+					// enough items to flow over to a new page, so we tell
+					// the outside world to refresh its pagers if it has any.
+					onPageChangeAfterAppend(ajax);
+					if (appendState.stayOnPage)
+					{
+						onItemsPendingAfterAppend(appendState.addPendingItems(
+								unrenderedItemCount - availableSlotsInPage),
+								ajax);
+					}
+				}
+			}
+			appendState.lastItemCount = newItemCount;
+			appendedRows = null;
+			appendedItems = null;
+			if (!appending)
+			{
+				// if we are appending, the whole page is rendered, which
+				// starts prefetching afterwards
+				startPrefetch(newItemCount);
+			}
+		}
+	}
 
-				int newlyRenderedItemCount = 0;
+	/**
+	 * Call this method after removing a single item from the {@code
+	 * DataProvider}. See {@link #itemsRemoved(long, long, AjaxRequestTarget)}.
+	 *
+	 * @param index the index the item had in the DataProvider
+	 * @param ajax  the currently active {@link AjaxRequestTarget}
+	 */
+	public void itemRemoved(long index, AjaxRequestTarget ajax)
+	{
+		itemsRemoved(index, 1, ajax);
+	}
 
-				// whatever we append will obviously come after anything
-				// that was there before, so the index will start where the
-				// last render left off:
-				nextIndex = (int) (lastItemCount);
+	/**
+	 * Call this method after removing a contiguous range of items from the
+	 * {@code DataProvider} given to this {@code AppendableGridView}. Only the
+	 * cells from the removal point to the end of the current page are
+	 * re-rendered: the items after the removed ones move up, cells at the end
+	 * of the page that have no item anymore become empty items, and rows that
+	 * are left completely empty are removed from the browser. The parent is
+	 * only repainted if the current page has no items left, in which case the
+	 * grid goes to the last remaining page.
+	 *
+	 * @param index the index the first removed item had in the DataProvider
+	 * @param count the number of removed items
+	 * @param ajax  the currently active {@link AjaxRequestTarget}
+	 */
+	public void itemsRemoved(long index, long count, AjaxRequestTarget ajax)
+	{
+		if (count <= 0 || index >= appendState.lastItemCount)
+		{
+			return;
+		}
+		count = Math.min(count, appendState.lastItemCount - index);
+		// the indexes of the prefetched items have changed
+		cancelPrefetch();
 
-				if (availableSlotsInLastRow > 0)
+		// the rendered page was determined with the old item count, so use
+		// that to find it again without asking the DataProvider
+		appendState.knownItemCount = appendState.lastItemCount;
+		final long oldPageCount = getPageCount();
+		final long pageOffset = getFirstItemOffset();
+
+		final long newItemCount = appendState.lastItemCount - count;
+		appendState.knownItemCount = newItemCount;
+		appendState.lastItemCount = newItemCount;
+
+		if (pageCacheBehavior != null)
+		{
+			// every page from the removed items on has changed
+			ajax.appendJavaScript(ClientPageCacheBehavior.getInvalidateScript(
+					getParent().getMarkupId(), index / getItemsPerPage()));
+		}
+
+		if (index >= pageOffset + getItemsPerPage())
+		{
+			// the removed items were on a later page, nothing changes here
+			if (getPageCount() != oldPageCount)
+			{
+				onPageChangeAfterRemove(ajax);
+			}
+			return;
+		}
+		if (newItemCount <= pageOffset)
+		{
+			// nothing left on this page (or in the whole grid), so go to the
+			// last page there is and redraw from parent
+			setCurrentPage(Math.max(0, getPageCount() - 1));
+			ajax.add(getParent());
+			onPageChangeAfterRemove(ajax);
+			return;
+		}
+		if (renderedPageStale)
+		{
+			// the browser shows a cached page we don't have the items for
+			ajax.add(getParent());
+			if (getPageCount() != oldPageCount)
+			{
+				onPageChangeAfterRemove(ajax);
+			}
+			return;
+		}
+
+		// the items that are visible on this page now. everything from the
+		// first removed item on is re-rendered, which means the rest of the
+		// current page, with the items that moved up from later pages.
+		final long firstChanged = Math.max(index, pageOffset);
+		final long visibleEnd = pageOffset +
+				Math.min(getItemsPerPage(), newItemCount - pageOffset);
+		final Iterator<IModel<T>> models = firstChanged < visibleEnd ?
+				getItemModels(firstChanged, visibleEnd - firstChanged) :
+				Collections.<IModel<T>>emptyIterator();
+
+		// the empty items will be different ones after this, and only the
+		// last remaining row can have any
+		renderedEmptyItems.clear();
+		final List<Component> emptyRows = new ArrayList<>();
+		long position = pageOffset;
+		for (Component child : this)
+		{
+			// the rows and cells are all created by newRowItem and newItem
+			@SuppressWarnings("unchecked")
+			final AppendableRowItem row = (AppendableRowItem) child;
+			if (position >= visibleEnd)
+			{
+				emptyRows.add(row);
+				position += getColumns();
+				continue;
+			}
+			final List<Component> cells = new ArrayList<>();
+			for (Component cell : (MarkupContainer) row.get("cols"))
+			{
+				cells.add(cell);
+			}
+			int column = 0;
+			for (Component component : cells)
+			{
+				@SuppressWarnings("unchecked")
+				final AppendableItem cell = (AppendableItem) component;
+				if (position >= visibleEnd)
 				{
-					// create the models for the new items, but only as many as
-					// we need for the last partially-filled row
-					final Iterator<IModel<T>> unrenderedItemModels =
-							getItemModels(lastItemCount,
-									availableSlotsInLastRow);
-
-
-					// first fill in the empty cells that were left after the
-					// last rendering
-					while (availableSlotsInPage > 0 &&
-							unrenderedItemModels.hasNext() &&
-							emptyItemsToReplace
-									.hasNext())
+					if (cell.getModel() == null)
+					{
+						// was empty before and stays empty
+						recordEmptyItem(cell);
+					}
+					else
 					{
-						final IModel<T> model = unrenderedItemModels.next();
 						final AppendableItem emptyItem =
-								emptyItemsToReplace.next();
-						emptyItemsToReplace.remove();
-						final AppendableItem newItem =
-								newItem(emptyItem.getId(), nextIndex, model);
-						populateItem(newItem);
-						emptyItem.replaceWith(newItem);
-						ajax.add(newItem);
-						onAppendItem(newItem, ajax);
-						availableSlotsInPage--;
-						nextIndex++;
-						newlyRenderedItemCount++;
-						unrenderedItemCount--;
-						lastRenderedRowMarkupId =
-								newItem.findParent(AppendableRowItem.class)
-								       .getMarkupId();
+								newEmptyItem(cell.getId(), column);
+						populateEmptyItem(emptyItem);
+						cell.replaceWith(emptyItem);
+						ajax.add(emptyItem);
+						recordEmptyItem(emptyItem);
 					}
 				}
+				else if (position >= firstChanged)
+				{
+					final AppendableItem newItem = newItem(cell.getId(),
+							position, models.next());
+					populateItem(newItem);
+					cell.replaceWith(newItem);
+					ajax.add(newItem);
+				}
+				position++;
+				column++;
+			}
+			lastRenderedRowMarkupId = row.getMarkupId();
+		}
+		for (Component emptyRow : emptyRows)
+		{
+			ajax.prependJavaScript(String.format(
+					"AppendableListView.removeItem('%s');",
+					emptyRow.getMarkupId()));
+			remove(emptyRow);
+		}
+		// the replacement items registered themselves as appended, but
+		// nothing was appended here
+		appendedItems = null;
 
-				if (availableSlotsInPage > 0 && unrenderedItemCount > 0 &&
-						unusedRowsOnLastPage > 0)
+		if (getPageCount() != oldPageCount)
+		{
+			// fewer items may mean fewer pages, so let the world know to
+			// redraw any pager
+			onPageChangeAfterRemove(ajax);
+		}
+	}
+
+	/**
+	 * Render new items that belong on the page that is currently shown,
+	 * starting after the last rendered item: first into the empty cells of
+	 * the last row, then into new rows.
+	 *
+	 * @param availableSlotsInPage the number of cells on this page that do
+	 *                             not contain an item yet
+	 * @param unrenderedItemCount  the number of items to render
+	 * @param unusedRowsOnLastPage the number of rows that can still be added
+	 *                             to this page
+	 */
+	private void appendOnCurrentPage(long availableSlotsInPage,
+	                                 long unrenderedItemCount,
+	                                 long unusedRowsOnLastPage,
+	                                 AjaxRequestTarget ajax)
+	{
+		// partially-filled rows are filled with empty items. we can
+		// target them individually with regular Wicket ajax, no
+		// other javascript shenanigans are needed.
+		final Iterator<AppendableItem> emptyItemsToReplace =
+				renderedEmptyItems.iterator();
+
+		final int availableSlotsInLastRow = renderedEmptyItems.size();
+
+		// whatever we append will obviously come after anything
+		// that was there before, so the index will start where the
+		// last render left off:
+		nextIndex = appendState.lastItemCount;
+
+		deferPopulation = hydrationBehavior != null;
+
+		// create the models for all new items that will be shown on
+		// this page with a single query. the first ones fill the
+		// empty cells in the last row, the rest goes into new rows.
+		final Iterator<IModel<T>> unrenderedItemModels =
+				availableSlotsInPage > 0 ?
+						loadAppendedItemModels(appendState.lastItemCount,
+								Math.min(availableSlotsInPage,
+										unrenderedItemCount)) :
+						Collections.<IModel<T>>emptyIterator();
+
+		if (availableSlotsInLastRow > 0)
+		{
+			// first fill in the empty cells that were left after the
+			// last rendering
+			final List<AppendableItem> filledItems = new ArrayList<>();
+			while (availableSlotsInPage > 0 &&
+					unrenderedItemModels.hasNext() &&
+					emptyItemsToReplace
+							.hasNext())
+			{
+				final IModel<T> model = unrenderedItemModels.next();
+				final AppendableItem emptyItem =
+						emptyItemsToReplace.next();
+				emptyItemsToReplace.remove();
+				final AppendableItem newItem =
+						newItem(emptyItem.getId(), nextIndex, model);
+				populateOrDefer(newItem);
+				emptyItem.replaceWith(newItem);
+				filledItems.add(newItem);
+				availableSlotsInPage--;
+				nextIndex++;
+				unrenderedItemCount--;
+			}
+			if (!filledItems.isEmpty())
+			{
+				// all rows are created by newRowItem
+				@SuppressWarnings("unchecked")
+				final AppendableRowItem lastRow = filledItems.get(0)
+						.findParent(AppendableRowItem.class);
+				if (filledItems.size() >
+						getColumns() * rowRepaintThreshold)
 				{
-					// there are items left to render, but now we need to
-					// create new rows
-					final Iterator<IModel<T>> unrenderedItemModels =
-							getItemModels(
-									lastItemCount + newlyRenderedItemCount,
-									availableSlotsInPage);
-
-					// we will use GridView's addItems for this, which wants
-					// an iterator containing the actual items, so we let the
-					// ReuseStrategy build that for us
-					Iterator<Item<T>> newItems =
-							getItemReuseStrategy().getItems(newItemFactory(),
-									unrenderedItemModels,
-									getItems());
-					addItems(newItems);
-
-					for (AppendableRowItem newlyAddedRow : appendedRows)
-					{
-						if (rowTagName == null)
-						{
-							rowTagName = newlyAddedRow
-									.getItemTagName();
-						}
-						// each row that wasn't there before needs to have an
-						// element with its id inserted into the DOM, so that
-						// wicket-ajax has a target to replace. since this is
-						// the same that AppendableListView does we simply
-						// re-use its javascript function here. see
-						// AppendableListView for details.
-						ajax.prependJavaScript(String.format(
-								"AppendableListView.appendAfter('%s', '%s', '%s');",
-								lastRenderedRowMarkupId, newlyAddedRow
-										.getMarkupId(), rowTagName));
-						ajax.add(newlyAddedRow);
-						onAppendRow(newlyAddedRow, ajax);
-						lastRenderedRowMarkupId = newlyAddedRow.getMarkupId();
-					}
+					// most of the row changes, so re-rendering it
+					// once is cheaper than replacing each cell
+					ajax.add(lastRow);
 				}
-				if (unrenderedItemCount > availableSlotsInPage)
+				else
 				{
-					// we have added items on the current page, but there are
-					// enough items to flow over to a new page, so we tell
-					// the outside world to refresh its pagers if it has any.
-					onPageChangeAfterAppend(ajax);
+					ajax.add(filledItems.toArray(new Component[0]));
 				}
+				for (AppendableItem filledItem : filledItems)
+				{
+					onAppendItem(filledItem, ajax);
+				}
+				lastRenderedRowMarkupId = lastRow.getMarkupId();
 			}
-			lastItemCount = newItemCount;
-			appendedRows = null;
-			appendedItems = null;
 		}
+
+		if (availableSlotsInPage > 0 && unrenderedItemCount > 0 &&
+				unusedRowsOnLastPage > 0 &&
+				unrenderedItemModels.hasNext())
+		{
+			// there are items left to render, but now we need to
+			// create new rows for the remaining models
+
+			// we will use GridView's addItems for this, which wants
+			// an iterator containing the actual items, so we let the
+			// append ReuseStrategy build that for us
+			Iterator<Item<T>> newItems =
+					getAppendItemReuseStrategy().getItems(newItemFactory(),
+							unrenderedItemModels,
+							getItems());
+			addItems(newItems);
+
+			// each row that wasn't there before needs to have an
+			// element with its id inserted into the DOM, so that
+			// wicket-ajax has a target to replace. all of them are
+			// inserted after the last rendered row with one script,
+			// so the browser only has to do this once.
+			if (rowTagName == null)
+			{
+				rowTagName = appendedRows.get(0).getItemTagName();
+			}
+			ajax.prependJavaScript(AppendState.getAppendAllScript(
+					lastRenderedRowMarkupId, appendedRows, rowTagName));
+			ajax.add(appendedRows.toArray(new Component[0]));
+			for (AppendableRowItem newlyAddedRow : appendedRows)
+			{
+				onAppendRow(newlyAddedRow, ajax);
+			}
+			lastRenderedRowMarkupId = appendedRows
+					.get(appendedRows.size() - 1).getMarkupId();
+		}
+		deferPopulation = false;
 	}
 
 	protected void onPageChangeAfterAppend(AjaxRequestTarget ajax)
@@ -473,6 +1242,63 @@ public abstract class AppendableGridView<T> extends GridView<T>
 
 	}
 
+	/**
+	 * Called instead of changing the page when {@link #setStayOnPage(boolean)
+	 * stay-on-page mode} is enabled and appended items are not shown on the
+	 * current page. Use this to update a lightweight "N new items" indicator,
+	 * and maybe a pager.
+	 *
+	 * @param pendingItemCount the number of appended items that were not
+	 *                         shown since the last full render
+	 * @param ajax             the currently active {@link AjaxRequestTarget}
+	 */
+	protected void onItemsPendingAfterAppend(long pendingItemCount,
+	                                         AjaxRequestTarget ajax)
+	{
+
+	}
+
+	/**
+	 * When new items would only be visible on a different page, {@link
+	 * #itemsAppended(AjaxRequestTarget)} normally goes to that page and
+	 * repaints the parent. With stay-on-page mode enabled, the current page
+	 * is kept instead, and {@link #onItemsPendingAfterAppend(long,
+	 * AjaxRequestTarget)} is called with the number of items that were not
+	 * shown. The new items are rendered once the user goes to their page.
+	 *
+	 * @param stayOnPage whether to stay on the current page when appending
+	 * @return this, for method chaining
+	 */
+	public AppendableGridView<T> setStayOnPage(boolean stayOnPage)
+	{
+		appendState.stayOnPage = stayOnPage;
+		return this;
+	}
+
+	public boolean getStayOnPage()
+	{
+		return appendState.stayOnPage;
+	}
+
+	/**
+	 * @return the number of appended items that were not shown since the
+	 * last full render, see {@link #setStayOnPage(boolean)}
+	 */
+	public long getPendingItemCount()
+	{
+		return appendState.pendingItemCount;
+	}
+
+	/**
+	 * Called by {@link #itemsRemoved(long, long, AjaxRequestTarget)} when the
+	 * number of pages or the current page changed, so any pager can be
+	 * redrawn.
+	 */
+	protected void onPageChangeAfterRemove(AjaxRequestTarget ajax)
+	{
+
+	}
+
 	protected void onAppendRow(AppendableRowItem row, AjaxRequestTarget
 			ajax)
 	{
@@ -518,8 +1344,222 @@ public abstract class AppendableGridView<T> extends GridView<T>
 	protected void onAfterRender()
 	{
 		super.onAfterRender();
-		this.lastItemCount = getItemCount();
+		if (loadMoreBehavior != null)
+		{
+			// in continuous mode, we only keep track of what's rendered. the
+			// rest is loaded on demand.
+			appendState.lastItemCount = getFirstItemOffset() + getViewSize();
+		}
+		else
+		{
+			appendState.afterRender(this::getItemCount);
+		}
 		this.appendedRows = null;
+		// in continuous mode, the total is only known if the rows are not
+		// full, i.e. the last item has been rendered
+		startPrefetch(loadMoreBehavior == null ||
+				getViewSize() < getItemsPerPage() ?
+				appendState.lastItemCount : Long.MAX_VALUE);
+	}
+
+	/**
+	 * Return an executor to load the next items in the background after each
+	 * render, so that going to the next page or the next {@link
+	 * #loadMore(AjaxRequestTarget) continuous load} can use them instead of
+	 * querying the DataProvider while the request waits. The items after the
+	 * last rendered one are loaded, a page (or in continuous mode, one load)
+	 * worth of them. Nothing is prefetched if the last item has been rendered,
+	 * so this does not help with {@link #itemsAppended(AjaxRequestTarget)}:
+	 * the appended items did not exist yet when the previous request ended.
+	 * If the prefetched items are not loaded yet when they are needed, or if
+	 * there are fewer of them than needed, the DataProvider is queried as
+	 * usual.
+	 * <p>
+	 * The DataProvider's {@link IDataProvider#iterator(long, long) iterator}
+	 * is then called on the executor's thread, on the same DataProvider
+	 * instance that the grid uses, while the request thread and later
+	 * requests keep using, {@link IDataProvider#detach() detaching} and
+	 * serializing it. The DataProvider must therefore be thread-safe and not
+	 * depend on request state. For example, a {@link
+	 * org.apache.wicket.markup.repeater.data.ListDataProvider} over a list
+	 * that is appended to is not, while a DataProvider that keeps no state
+	 * besides thread-safe references to its backend is. The prefetched items
+	 * are not serialized with the page.
+	 *
+	 * @return the executor for prefetching, or null to disable prefetching
+	 * (the default)
+	 */
+	protected Executor getPrefetchExecutor()
+	{
+		return null;
+	}
+
+	/**
+	 * @param itemCount the total number of items, or {@link Long#MAX_VALUE}
+	 *                  if it is not known
+	 */
+	private void startPrefetch(long itemCount)
+	{
+		cancelPrefetch();
+		final Executor executor = getPrefetchExecutor();
+		if (executor == null)
+		{
+			return;
+		}
+		final long first = getFirstItemOffset() + getViewSize();
+		if (first >= itemCount)
+		{
+			// the next items do not exist yet. appended ones are loaded by
+			// itemsAppended itself.
+			return;
+		}
+		final long count = loadMoreBehavior != null ?
+				(long) rowsPerLoad * getColumns() : getItemsPerPage();
+		final IDataProvider<T> dataProvider = getDataProvider();
+		prefetchFirst = first;
+		prefetch = CompletableFuture.supplyAsync(() ->
+		{
+			final List<T> objects = new ArrayList<>();
+			dataProvider.iterator(first, count).forEachRemaining(objects::add);
+			return objects;
+		}, executor);
+	}
+
+	private void cancelPrefetch()
+	{
+		if (prefetch != null)
+		{
+			prefetch.cancel(false);
+			prefetch = null;
+		}
+	}
+
+	/**
+	 * @return the models for the given range from the prefetched items, or
+	 * null if they are not available (yet)
+	 */
+	private Iterator<IModel<T>> takePrefetched(long first, long count)
+	{
+		final CompletableFuture<List<T>> prefetched = prefetch;
+		prefetch = null;
+		if (prefetched == null || prefetchFirst != first ||
+				!prefetched.isDone() || prefetched.isCompletedExceptionally())
+		{
+			if (prefetched != null)
+			{
+				prefetched.cancel(false);
+			}
+			return null;
+		}
+		final List<T> objects = prefetched.join();
+		if (objects.size() < count)
+		{
+			// maybe the items were not there yet when they were prefetched
+			return null;
+		}
+		final IDataProvider<T> dataProvider = getDataProvider();
+		final Iterator<T> iterator = objects.subList(0, (int) count).iterator();
+		return new Iterator<IModel<T>>()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				return iterator.hasNext();
+			}
+
+			@Override
+			public IModel<T> next()
+			{
+				return dataProvider.model(iterator.next());
+			}
+		};
+	}
+
+	/**
+	 * Like {@link #getItemModels(long, long)}, but uses the prefetched items
+	 * if possible.
+	 */
+	private Iterator<IModel<T>> loadItemModels(long first, long count)
+	{
+		final Iterator<IModel<T>> prefetched = takePrefetched(first, count);
+		return prefetched != null ? prefetched : getItemModels(first, count);
+	}
+
+	/**
+	 * Like {@link #loadItemModels(long, long)}, but lets {@link
+	 * #preloadModels(List)} load all of them first.
+	 */
+	private Iterator<IModel<T>> loadAppendedItemModels(long first, long count)
+	{
+		final List<IModel<T>> models = new ArrayList<>();
+		loadItemModels(first, count).forEachRemaining(models::add);
+		preloadModels(models);
+		return models.iterator();
+	}
+
+	/**
+	 * Return an executor to load the models of appended items in parallel,
+	 * see {@link #preloadModels(List)}. Each model's {@link IModel#getObject()
+	 * getObject} is then called on the executor's thread, outside of the
+	 * request, so it must not depend on request state, e.g. the Session.
+	 *
+	 * @return the executor for loading models, or null to load them one by one
+	 * while rendering (the default)
+	 */
+	protected Executor getModelLoadingExecutor()
+	{
+		return null;
+	}
+
+	/**
+	 * Called with the models of all items appended in one request, before the
+	 * items are created. The default implementation loads them in parallel on
+	 * the {@link #getModelLoadingExecutor() model loading executor}, if there
+	 * is one, and waits for all of them. Override this to load them in some
+	 * other way, e.g. with a single bulk query for all their ids.
+	 *
+	 * @param models the models of the appended items
+	 */
+	protected void preloadModels(List<IModel<T>> models)
+	{
+		ParallelModelLoader.load(models, getModelLoadingExecutor());
+	}
+
+	@Override
+	protected Iterator<IModel<T>> getItemModels()
+	{
+		return loadItemModels(getFirstItemOffset(), getViewSize());
+	}
+
+	@Override
+	protected void onDetach()
+	{
+		appendState.detach();
+		super.onDetach();
+	}
+
+	@Override
+	public long getPageCount()
+	{
+		return appendState.getPageCount(getItemsPerPage(),
+				super::getPageCount);
+	}
+
+	@Override
+	public long getFirstItemOffset()
+	{
+		if (loadMoreBehavior != null)
+		{
+			return firstRetainedItem;
+		}
+		return super.getFirstItemOffset();
+	}
+
+	@Override
+	public long getViewSize()
+	{
+		return appendState.getViewSize(getItemsPerPage(),
+				getFirstItemOffset(), super::getViewSize);
 	}
 
 	@Override
@@ -527,14 +1567,60 @@ public abstract class AppendableGridView<T> extends GridView<T>
 	{
 		super.renderHead(response);
 		response.render(JavaScriptHeaderItem.forReference(SCRIPT));
+		if (loadMoreBehavior != null)
+		{
+			Component lastRow = null;
+			for (Component row : this)
+			{
+				lastRow = row;
+			}
+			if (lastRow != null)
+			{
+				response.render(OnDomReadyHeaderItem.forScript(loadMoreBehavior
+						.getObserveScript(lastRow.getMarkupId())));
+			}
+		}
+		if (pageCacheBehavior != null)
+		{
+			response.render(OnDomReadyHeaderItem.forScript(pageCacheBehavior
+					.getShownScript(getParent().getMarkupId(),
+							getCurrentPage(), hasStatelessItems())));
+		}
+	}
+
+	/**
+	 * @return whether none of the rendered rows and items need callbacks,
+	 * so the page can be cached by the client
+	 */
+	private boolean hasStatelessItems()
+	{
+		final Boolean stateful = visitChildren(Component.class,
+				(Component component, IVisit<Boolean> visit) -> {
+					if (!component.isStateless())
+					{
+						visit.stop(true);
+					}
+				});
+		return stateful == null;
 	}
 
 	protected class AppendableItem extends Item<T>
 	{
+		/**
+		 * see {@link #setLazyHydration(boolean)}
+		 */
+		private boolean placeholder = false;
+
+		/**
+		 * see {@link #getItemIndex()}
+		 */
+		private long itemIndex;
+
 		@SuppressWarnings("WeakerAccess")
 		protected AppendableItem(String id, int index, IModel<T> model)
 		{
 			super(id, index, model);
+			this.itemIndex = index;
 			setOutputMarkupId(true);
 		}
 
@@ -553,7 +1639,7 @@ public abstract class AppendableGridView<T> extends GridView<T>
 				// this is an empty item used to fill up the empty slots in a
 				// non-full row. we record these items here so we can later
 				// easily replace them via ajax.
-				renderedEmptyItems.put(this.getIndex(), this);
+				recordEmptyItem(this);
 			}
 		}
 
@@ -564,6 +1650,55 @@ public abstract class AppendableGridView<T> extends GridView<T>
 			recordAppendedItemIfNecessary();
 		}
 
+		@Override
+		public void renderHead(IHeaderResponse response)
+		{
+			super.renderHead(response);
+			if (placeholder && hydrationBehavior != null)
+			{
+				// every render replaces the element in the browser, e.g. when
+				// the whole row is repainted, so the new one must be observed
+				response.render(OnDomReadyHeaderItem.forScript(hydrationBehavior
+						.getObserveScript(Collections.singleton(getMarkupId()))));
+			}
+		}
+
+		@Override
+		public void onComponentTagBody(MarkupStream markupStream,
+		                               ComponentTag openTag)
+		{
+			if (placeholder)
+			{
+				// not populated yet, so there are no children to render the
+				// body with
+				getResponse().write(getPlaceholderMarkup(this));
+				markupStream.skipToMatchingCloseTag(openTag);
+			}
+			else
+			{
+				super.onComponentTagBody(markupStream, openTag);
+			}
+		}
+
+		/**
+		 * @return the index of this item's model in the DataProvider. Unlike
+		 * {@link #getIndex()}, this also works beyond {@link
+		 * Integer#MAX_VALUE} items.
+		 */
+		public long getItemIndex()
+		{
+			return itemIndex;
+		}
+
+		/**
+		 * @return whether this item is a placeholder that has not been
+		 * populated yet, see {@link #setLazyHydration(boolean)}
+		 */
+		public boolean isPlaceholder()
+		{
+			return placeholder;
+		}
+
 		private void recordAppendedItemIfNecessary()
 		{
 			if (this.getModel() != null)
@@ -17,19 +17,39 @@
 package de.wicketbuch.extensions.appendablerepeater;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
+import org.apache.wicket.Application;
 import org.apache.wicket.Component;
+import org.apache.wicket.Page;
 import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.core.util.lang.WicketObjects;
+import org.apache.wicket.core.util.string.ComponentRenderer;
+import org.apache.wicket.markup.ComponentTag;
+import org.apache.wicket.markup.IMarkupFragment;
 import org.apache.wicket.markup.MarkupStream;
 import org.apache.wicket.markup.head.IHeaderResponse;
 import org.apache.wicket.markup.head.JavaScriptHeaderItem;
+import org.apache.wicket.markup.head.OnDomReadyHeaderItem;
 import org.apache.wicket.markup.html.list.ListItem;
 import org.apache.wicket.markup.html.list.ListView;
 import org.apache.wicket.model.IModel;
+import org.apache.wicket.request.Response;
 import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.resource.PackageResourceReference;
 import org.apache.wicket.request.resource.ResourceReference;
+import org.apache.wicket.response.StringResponse;
 import org.apache.wicket.util.visit.IVisit;
 import org.apache.wicket.util.visit.IVisitor;
 
@@ -49,15 +69,53 @@ public abstract class AppendableListView<T> extends ListView<T>
 	public static final ResourceReference SCRIPT =
 			new PackageResourceReference(AppendableListView.class, "AppendableListView.js");
 
-	// a reference to the last rendered child. This is used to get the markupId of the element after which the new
-	// one should be rendered.
-	private AppendableListItem lastChild;
+	// the markup id of the last rendered child. This is the element after which the new one should be rendered.
+	private String lastChildMarkupId;
 
 	// elements that were added during a full repaint (i.e. when the list was initially empty).
 	// see #populateItem
 	private List<T> newElements;
 	private String itemTagName;
 
+	// ListItems that were removed via #removeItemFor and can be rebound to new elements instead of creating new
+	// ones. They are keyed by their component id, which is the list index they were created for. This is
+	// transient: the pool is only an optimization, a deserialized page simply starts over with an empty one.
+	private transient Map<String, AppendableListItem> recycledItems;
+	private int maxRecycledItems = 0;
+
+	// see #setRetainItems
+	private boolean retainItems = true;
+
+	// when ListItems are not retained, these are the markup ids of the rendered ListItems, in list order. They are
+	// all we need to append or remove items later.
+	private List<String> itemMarkupIds;
+
+	// see #setLazyHydration. null if lazy hydration is disabled.
+	private LazyHydrationBehavior hydrationBehavior;
+
+	// see #setClientVirtualization
+	private boolean clientVirtualization = false;
+
+	// see #setVirtualizationOverscan
+	private int virtualizationOverscan = 500;
+
+	// the endpoint for streamNewItemsFor, created when first needed
+	private StreamBehavior streamBehavior;
+	private int streamChunkSize = 100;
+
+	// see #setRenderCacheSize. the rendered markup of recently rendered ListItems by their render cache key, in
+	// LRU order. like the recycled items, this is only an optimization and not serialized.
+	private transient Map<Object, RenderedItem> renderCache;
+	private int renderCacheSize = 0;
+	// the render cache keys of the ListItems on the page. a cached markup id must only be used once, so elements with
+	// the same key as one of them are populated and not cached.
+	private transient Set<Object> renderedCacheKeys;
+
+	// see #prerender. items that are being rendered in the background, by their render cache key. they are moved to
+	// the render cache by the request thread once they are done, so the cache itself is never shared between threads.
+	private transient Map<Object, CompletableFuture<RenderedItem>> prerenderedItems;
+	private int prerenderCounter = 0;
+
 	public AppendableListView(String id)
 	{
 		super(id);
@@ -82,7 +140,7 @@ public abstract class AppendableListView<T> extends ListView<T>
 	@Override
 	protected final void populateItem(ListItem<T> item)
 	{
-		populateItem((AppendableListItem) item);
+		populateOrUseRenderCache((AppendableListItem) item);
 		if (newElements != null && newElements.contains(item.getModelObject()))
 		{
 			// if this is an ajax request and we have newElements, that means it's a
@@ -93,6 +151,44 @@ public abstract class AppendableListView<T> extends ListView<T>
 		}
 	}
 
+	/**
+	 * Populates the given item, unless its markup is in the render cache, see {@link #setRenderCacheSize(int)}.
+	 */
+	private void populateOrUseRenderCache(AppendableListItem item)
+	{
+		Object renderCacheKey = renderCacheSize > 0 ? getRenderCacheKey(item.getModelObject()) : null;
+		if (renderCacheKey != null)
+		{
+			if (renderedCacheKeys == null)
+			{
+				renderedCacheKeys = new HashSet<>();
+			}
+			if (renderedCacheKeys.add(renderCacheKey))
+			{
+				takePrerenderedItems();
+			}
+			else
+			{
+				// a duplicate, so it needs its own markup id
+				renderCacheKey = null;
+			}
+		}
+		final RenderedItem renderedItem =
+				renderCacheKey != null && renderCache != null ? renderCache.get(renderCacheKey) : null;
+		if (renderedItem != null)
+		{
+			// no need to populate it, the markup from last time is written instead. it keeps its markup id, so
+			// appending and removing works as usual.
+			item.setMarkupId(renderedItem.markupId);
+			item.cachedMarkup = renderedItem.markup;
+		}
+		else
+		{
+			populateItem(item);
+			item.renderCacheKey = renderCacheKey;
+		}
+	}
+
 	@Override
 	protected void onInitialize()
 	{
@@ -105,6 +201,32 @@ public abstract class AppendableListView<T> extends ListView<T>
 	{
 		super.renderHead(response);
 		response.render(JavaScriptHeaderItem.forReference(SCRIPT));
+		if (clientVirtualization)
+		{
+			response.render(OnDomReadyHeaderItem.forScript(
+					String.format("AppendableListView.virtualize('%s', %d);", getParent().getMarkupId(),
+							virtualizationOverscan)));
+		}
+	}
+
+	@Override
+	protected void onBeforeRender()
+	{
+		if (!getReuseItems())
+		{
+			// all ListItems are populated again
+			renderedCacheKeys = null;
+		}
+		super.onBeforeRender();
+		if (!retainItems)
+		{
+			// this is a full render, so all ListItems were just recreated by ListView#onPopulate
+			itemMarkupIds = new ArrayList<>(size());
+			for (Component item : this)
+			{
+				itemMarkupIds.add(item.getMarkupId());
+			}
+		}
 	}
 
 	@Override
@@ -114,6 +236,31 @@ public abstract class AppendableListView<T> extends ListView<T>
 		newElements = null;
 	}
 
+	@Override
+	protected void onDetach()
+	{
+		if (!retainItems && size() > 0)
+		{
+			// the ListItems are recreated on the next full render anyway, and appending or removing only needs
+			// their markup ids. dropping them keeps them out of the page store. this is not a change in the page's
+			// state, so it must not create a new page version.
+			final Page page = findPage();
+			final boolean frozen = page != null && page.setFreezePageId(true);
+			try
+			{
+				removeAll();
+			}
+			finally
+			{
+				if (page != null)
+				{
+					page.setFreezePageId(frozen);
+				}
+			}
+		}
+		super.onDetach();
+	}
+
 	protected abstract void populateItem(AppendableListItem item);
 
 	/**
@@ -134,12 +281,12 @@ public abstract class AppendableListView<T> extends ListView<T>
 		{
 			// if we currently have no list elements, then whatever was the last element is now stale and we need to
 			// repaint anyway.
-			lastChild = null;
+			lastChildMarkupId = null;
 		}
 		getModel().getObject().add(newElement);
 		if (ajax != null)
 		{
-			if (lastChild == null)
+			if (lastChildMarkupId == null)
 			{
 				ajax.add(getParent());
 				if (newElements == null)
@@ -151,37 +298,200 @@ public abstract class AppendableListView<T> extends ListView<T>
 			else
 			{
 				final int newIndex = getModel().getObject().size() - 1;
-				final AppendableListItem newItem =
-						newItem(newIndex, getListItemModel(getModel(), newIndex));
-				add(newItem);
-				populateItem(newItem);
+				AppendableListItem newItem = takeRecycledItem(newIndex);
+				if (newItem == null)
+				{
+					newItem = newItem(newIndex, getListItemModel(getModel(), newIndex));
+					add(newItem);
+					if (hydrationBehavior != null)
+					{
+						// observed by the client once it is rendered, see AppendableListItem#renderHead
+						newItem.placeholder = true;
+					}
+					else
+					{
+						populateOrUseRenderCache(newItem);
+					}
+				}
+				else
+				{
+					add(newItem);
+					onRecycleItem(newItem);
+				}
 				onAppendItem(newItem, ajax);
 				if (itemTagName == null)
 				{
 					itemTagName = newItem.getItemTagName();
 				}
 				ajax.prependJavaScript(
-						String.format("AppendableListView.appendAfter('%s', '%s', '%s');", lastChild
-								.getMarkupId(), newItem
-								.getMarkupId(), itemTagName));
+						String.format("AppendableListView.appendAfter('%s', '%s', '%s');",
+								lastChildMarkupId, newItem.getMarkupId(), itemTagName));
 				ajax.add(newItem);
-				lastChild = newItem;
+				if (clientVirtualization)
+				{
+					ajax.appendJavaScript(String.format("AppendableListView.refreshVirtualization('%s', %d);",
+							getParent().getMarkupId(), virtualizationOverscan));
+				}
+				lastChildMarkupId = newItem.getMarkupId();
+				if (itemMarkupIds != null)
+				{
+					itemMarkupIds.add(lastChildMarkupId);
+				}
 			}
 		}
 		return this;
 	}
 
+	/**
+	 * Append all <code>newElements</code> to the end of the model list and stream their ListItems to the browser.
+	 * Instead of rendering all of them into the AJAX response, this only tells the browser to fetch them from a
+	 * separate endpoint. That endpoint renders them in chunks of {@link #setStreamChunkSize(int)} items and writes
+	 * each chunk as soon as it is rendered, and the browser inserts each chunk as it arrives. This way the first
+	 * items show up long before the last ones are rendered, and the server never holds the markup of all of them at
+	 * once. Use this for large bulk appends, e.g. thousands of items.
+	 * <p>
+	 * Only the markup of the items is streamed, so header contributions of their components are not rendered.
+	 * Neither {@link #onAppendItem(AppendableListItem, AjaxRequestTarget)} nor {@link #setLazyHydration(boolean) lazy
+	 * hydration} apply to streamed items. Appends and removals done before the stream has finished repaint the
+	 * parent. As with {@link #appendNewItemFor(Object, AjaxRequestTarget)}, if <code>ajax</code> is null the elements
+	 * are just added to the model list, and if the list was empty the parent is repainted.
+	 *
+	 * @param newElements The new list elements
+	 * @param ajax        The ajax request target
+	 * @return this, for method chaining
+	 */
+	public AppendableListView<T> streamNewItemsFor(Collection<? extends T> newElements, AjaxRequestTarget ajax)
+	{
+		final List<T> list = getModel().getObject();
+		if (list.isEmpty())
+		{
+			lastChildMarkupId = null;
+		}
+		final int from = list.size();
+		list.addAll(newElements);
+		if (ajax == null || newElements.isEmpty())
+		{
+			return this;
+		}
+		if (lastChildMarkupId == null)
+		{
+			ajax.add(getParent());
+			return this;
+		}
+		if (streamBehavior == null)
+		{
+			streamBehavior = new StreamBehavior()
+			{
+				@Override
+				protected void renderChunks(int from, int to, Consumer<CharSequence> chunks)
+				{
+					renderStreamedItems(from, to, chunks);
+				}
+			};
+			add(streamBehavior);
+		}
+		final CharSequence streamScript = streamBehavior.getStreamScript(from, list.size(), lastChildMarkupId);
+		ajax.appendJavaScript(clientVirtualization ?
+				String.format("%s.then(function () { AppendableListView.refreshVirtualization('%s', %d); });",
+						streamScript, getParent().getMarkupId(), virtualizationOverscan) :
+				streamScript + ";");
+		// the browser only knows the last element once the stream is done, see renderStreamedItems. until then, the
+		// next append needs to repaint the parent.
+		lastChildMarkupId = null;
+		return this;
+	}
+
+	private void renderStreamedItems(int from, int to, Consumer<CharSequence> chunks)
+	{
+		if (from < 0 || from >= to || to > getModel().getObject().size() ||
+				(itemMarkupIds != null ? itemMarkupIds.size() != from : get(String.valueOf(from)) != null))
+		{
+			// the list was changed or repainted since the stream was started
+			return;
+		}
+		final RequestCycle requestCycle = getRequestCycle();
+		final Response originalResponse = requestCycle.getResponse();
+		// like appending via ajax, this is not a change in the page's state
+		final Page page = findPage();
+		final boolean frozen = page.setFreezePageId(true);
+		try
+		{
+			for (int chunkStart = from; chunkStart < to; chunkStart += streamChunkSize)
+			{
+				final StringResponse chunk = new StringResponse();
+				requestCycle.setResponse(chunk);
+				final int chunkEnd = Math.min(to, chunkStart + streamChunkSize);
+				for (int index = chunkStart; index < chunkEnd; index++)
+				{
+					final AppendableListItem item = newItem(index, getListItemModel(getModel(), index));
+					add(item);
+					populateItem(item);
+					// this also makes it the last child, see AppendableListItem#onRender
+					item.render();
+					if (itemMarkupIds != null)
+					{
+						itemMarkupIds.add(item.getMarkupId());
+					}
+					if (!retainItems)
+					{
+						// keeps the server's memory use flat
+						remove(item);
+					}
+				}
+				requestCycle.setResponse(originalResponse);
+				chunks.accept(chunk.getBuffer());
+			}
+		}
+		finally
+		{
+			requestCycle.setResponse(originalResponse);
+			page.setFreezePageId(frozen);
+		}
+	}
+
+	/**
+	 * The number of items that {@link #streamNewItemsFor(Collection, AjaxRequestTarget)} renders and sends to the
+	 * browser at a time. The default is 100.
+	 *
+	 * @param streamChunkSize The number of items per chunk
+	 * @return this, for method chaining
+	 */
+	public AppendableListView<T> setStreamChunkSize(int streamChunkSize)
+	{
+		if (streamChunkSize < 1)
+		{
+			throw new IllegalArgumentException("streamChunkSize must be at least 1");
+		}
+		this.streamChunkSize = streamChunkSize;
+		return this;
+	}
+
+	public int getStreamChunkSize()
+	{
+		return streamChunkSize;
+	}
+
 	/**
 	 * Remove an element from the underlying list and remove the corresponding ListItem and HTML. If
 	 * {@code ajax} is null, the element is removed and the changed ListView will be rendered
-	 * normally in the next response. If the given element is not found, this function does nothing.
+	 * normally in the next response. If the given element is not found, this function does nothing. The list must
+	 * support {@link List#remove(Object)}, so this does not work with a {@link ChunkedFileList}.
 	 *
 	 * @param removeElement The element to remove
 	 * @param ajax          The AjaxRequestTarget
 	 */
 	public void removeItemFor(final T removeElement, final AjaxRequestTarget ajax)
 	{
-		if (ajax != null)
+		if (getModelObject() instanceof ChunkedFileList)
+		{
+			// refuse before any items are changed
+			throw new UnsupportedOperationException("ChunkedFileList is append-only, elements cannot be removed");
+		}
+		if (ajax != null && !retainItems)
+		{
+			removeItemMarkupFor(removeElement, ajax);
+		}
+		else if (ajax != null)
 		{
 			final Component[] last = new Component[2];
 			final boolean[] found = new boolean[1];
@@ -214,15 +524,452 @@ public abstract class AppendableListView<T> extends ListView<T>
 			});
 			if (found[0])
 			{
-				remove(last[0]);
-				//noinspection unchecked
-				lastChild = ((AppendableListItem) last[1]);
+				// the children of this ListView are all its own AppendableListItems, see newItem
+				@SuppressWarnings("unchecked")
+				final AppendableListItem removed = (AppendableListItem) last[0];
+				remove(removed);
+				recycleItem(removed);
+				lastChildMarkupId = last[1] != null ? last[1].getMarkupId() : null;
 			}
 		}
 		getModelObject().remove(removeElement);
 	}
 
 
+	/**
+	 * Render appended ListItems as lightweight placeholders first, and only populate them via
+	 * {@link #populateItem(AppendableListItem)} once they become visible in the browser. All items that become
+	 * visible at the same time are populated and rendered in one AJAX request. This is useful for items with
+	 * expensive content, when many items are appended but only few of them are ever scrolled into view.
+	 * <p>
+	 * This only applies to items appended via {@link #appendNewItemFor(Object, AjaxRequestTarget)}. A full render
+	 * populates all items as usual. What the placeholders look like is determined by
+	 * {@link #getPlaceholderMarkup(AppendableListItem)}. Since the ListItems have to stay around to be populated
+	 * later, this does not work with {@link #setRetainItems(boolean) setRetainItems(false)}.
+	 *
+	 * @param lazyHydration Whether to render appended items as placeholders first
+	 * @return this, for method chaining
+	 */
+	public AppendableListView<T> setLazyHydration(boolean lazyHydration)
+	{
+		if (lazyHydration && hydrationBehavior == null)
+		{
+			hydrationBehavior = new LazyHydrationBehavior()
+			{
+				@Override
+				protected void hydrate(Set<String> markupIds, AjaxRequestTarget ajax)
+				{
+					AppendableListView.this.visitChildren(AppendableListItem.class,
+							(AppendableListItem item, IVisit<Void> visit) ->
+					{
+						if (item.placeholder && markupIds.contains(item.getMarkupId()))
+						{
+							item.placeholder = false;
+							populateItem(item);
+							ajax.add(item);
+						}
+						visit.dontGoDeeper();
+					});
+				}
+			};
+			add(hydrationBehavior);
+		}
+		else if (!lazyHydration && hydrationBehavior != null)
+		{
+			remove(hydrationBehavior);
+			hydrationBehavior = null;
+		}
+		return this;
+	}
+
+	public boolean getLazyHydration()
+	{
+		return hydrationBehavior != null;
+	}
+
+	/**
+	 * Keep only the ListItems near the viewport in the browser's DOM. Items that are scrolled far out of view are
+	 * detached from the DOM and kept by the client script, and spacer elements before and after the remaining items
+	 * preserve the scroll height. Detached items are re-attached as they are scrolled back into view. This keeps
+	 * very long lists responsive in the browser.
+	 * <p>
+	 * The ListItems must be the only children of their parent element, e.g. the {@code <li>}s in a {@code <ul>}. The
+	 * scrolling element is the closest ancestor with {@code overflow-y: auto} or {@code scroll}, or the window if
+	 * there is none. Since detached items are not in the document, AJAX updates for them (other than appending and
+	 * removing) cannot be applied while they are detached.
+	 *
+	 * @param clientVirtualization Whether to virtualize the list in the browser
+	 * @return this, for method chaining
+	 */
+	public AppendableListView<T> setClientVirtualization(boolean clientVirtualization)
+	{
+		this.clientVirtualization = clientVirtualization;
+		return this;
+	}
+
+	public boolean getClientVirtualization()
+	{
+		return clientVirtualization;
+	}
+
+	/**
+	 * How far above and below the visible area ListItems stay attached when {@link #setClientVirtualization(boolean)
+	 * client virtualization} is enabled. A larger value means fewer items are re-attached while scrolling, but more
+	 * of them stay in the DOM. The default is 500 pixels.
+	 *
+	 * @param virtualizationOverscan The distance in pixels
+	 * @return this, for method chaining
+	 */
+	public AppendableListView<T> setVirtualizationOverscan(int virtualizationOverscan)
+	{
+		if (virtualizationOverscan < 0)
+		{
+			throw new IllegalArgumentException("virtualizationOverscan must not be negative");
+		}
+		this.virtualizationOverscan = virtualizationOverscan;
+		return this;
+	}
+
+	public int getVirtualizationOverscan()
+	{
+		return virtualizationOverscan;
+	}
+
+	/**
+	 * The markup that is rendered as the body of a placeholder ListItem, see {@link #setLazyHydration(boolean)}.
+	 * Placeholders should take up roughly the same space as the real items, otherwise lots of them become visible
+	 * at once. The default is an empty body, so you will want to either override this or give the placeholders a
+	 * minimum height via CSS. The placeholder ListItem's tag is rendered as usual.
+	 *
+	 * @param item The placeholder ListItem
+	 * @return The body markup for the placeholder
+	 */
+	protected CharSequence getPlaceholderMarkup(AppendableListItem item)
+	{
+		return "";
+	}
+
+	private void removeItemMarkupFor(final T removeElement, final AjaxRequestTarget ajax)
+	{
+		final int index = getModelObject().indexOf(removeElement);
+		if (index >= 0 && itemMarkupIds != null && index < itemMarkupIds.size())
+		{
+			ajax.prependJavaScript(String.format("AppendableListView.removeItem('%s');",
+					itemMarkupIds.remove(index)));
+			lastChildMarkupId =
+					itemMarkupIds.isEmpty() ? null : itemMarkupIds.get(itemMarkupIds.size() - 1);
+			// the ListItems still present in this request carry indexes and ids that are now off by one. they would
+			// be dropped at the end of the request anyway.
+			removeAll();
+		}
+	}
+
+	/**
+	 * Whether to keep the ListItems in the component tree between requests. The default is {@code true}, which is
+	 * how {@link ListView} normally works.
+	 * <p>
+	 * If this is set to {@code false}, the ListItems are removed from the component tree at the end of each request,
+	 * and only their markup ids are kept for later appends and removals. The ListItems are recreated on the next
+	 * full render. This keeps the page that is written to the page store small, especially together with a model
+	 * that only stores keys, such as {@link KeyedListModel}. Any components inside a ListItem are gone after the
+	 * request, so this is only useful for lists whose items do not have to receive any requests themselves, i.e.
+	 * that do not contain links or other interactive components.
+	 * <p>
+	 * Item recycling (see {@link #setMaxRecycledItems(int)}) does not apply in this mode.
+	 *
+	 * @param retainItems Whether to keep the ListItems between requests
+	 * @return this, for method chaining
+	 */
+	public AppendableListView<T> setRetainItems(boolean retainItems)
+	{
+		this.retainItems = retainItems;
+		if (retainItems)
+		{
+			itemMarkupIds = null;
+		}
+		return this;
+	}
+
+	public boolean getRetainItems()
+	{
+		return retainItems;
+	}
+
+	/**
+	 * Keep the rendered markup of up to <code>renderCacheSize</code> ListItems, and write that instead of populating
+	 * and rendering them again when the list is rendered completely, e.g. when the page or the parent is repainted.
+	 * This is useful for lists of immutable elements with expensive markup, such as feed entries. The least recently
+	 * rendered markup is dropped first. The default is 0, which disables the cache.
+	 * <p>
+	 * Only elements with a {@link #getRenderCacheKey(Object) render cache key} are cached, so override that as well.
+	 * A cached ListItem is not passed to {@link #populateItem(AppendableListItem)} and has no child components, so
+	 * only cache items that contain no components that need to receive requests (such as links) or contribute to the
+	 * page header. The cache is not serialized with the page. Cached ListItems keep their markup id, so if several
+	 * elements on the page have the same key, only the first of them uses the cache.
+	 * <p>
+	 * {@link AppendableGridView}, {@link AppendableDataView} and {@link AppendableDataTable} have no render cache,
+	 * they render every item of a repainted page again.
+	 *
+	 * @param renderCacheSize The maximum number of rendered ListItems to keep
+	 * @return this, for method chaining
+	 */
+	public AppendableListView<T> setRenderCacheSize(int renderCacheSize)
+	{
+		if (renderCacheSize < 0)
+		{
+			throw new IllegalArgumentException("renderCacheSize must not be negative");
+		}
+		this.renderCacheSize = renderCacheSize;
+		renderCache = null;
+		return this;
+	}
+
+	public int getRenderCacheSize()
+	{
+		return renderCacheSize;
+	}
+
+	/**
+	 * Return the key under which the rendered markup of the given element is cached, see
+	 * {@link #setRenderCacheSize(int)}. The key must change whenever the markup would change, so include a version or
+	 * modification time if the element can change. The default is null, which means that the element is not cached.
+	 *
+	 * @param element The list element
+	 * @return The render cache key, or null to not cache this element
+	 */
+	protected Object getRenderCacheKey(T element)
+	{
+		return null;
+	}
+
+	/**
+	 * Return an executor to render upcoming elements on in the background, see {@link #prerender(Collection)}.
+	 *
+	 * @return the executor for pre-rendering, or null to disable pre-rendering (the default)
+	 */
+	protected Executor getPrerenderExecutor()
+	{
+		return null;
+	}
+
+	/**
+	 * Render the ListItems for elements that are expected to be appended soon, e.g. the next batch of an infinite
+	 * scroll feed, in the background on the {@link #getPrerenderExecutor() prerender executor}. The markup is put
+	 * into the {@link #setRenderCacheSize(int) render cache}, so a later {@link #appendNewItemFor(Object,
+	 * AjaxRequestTarget)} (or full render) for one of them only has to write it instead of populating and rendering
+	 * its ListItem. This does nothing if there is no executor, the render cache is disabled or an element has no
+	 * {@link #getRenderCacheKey(Object) render cache key}.
+	 * <p>
+	 * The ListItems are rendered outside of any request with Wicket's {@link ComponentRenderer}, on a temporary page
+	 * with a copy of this ListView's markup. Each call renders all its elements one after another in a single task on
+	 * the executor, so they are available in the order they are given. {@link #populateItem(AppendableListItem)} is
+	 * then called on the executor's thread, on a serialized copy of this ListView and its page. So it must only use
+	 * the ListItem and its model, not the Session, the request or other components of the page, and changes it makes
+	 * to the ListView are not seen by the real one. The copy is made on the calling thread, once per call, which
+	 * costs about as much as serializing the page. So pass all upcoming elements at once rather than calling this
+	 * for each of them. The ListItem's model is not the usual one for a list
+	 * index, just one that returns the element. Children with an output markup id get one that is derived from the
+	 * ListItem's, unless they already have one. Elements that are not done rendering when they are needed are
+	 * populated and rendered as usual.
+	 * <p>
+	 * At most {@link #getRenderCacheSize()} items are waiting to be taken into the render cache. Further elements
+	 * are ignored until some of them have been taken, so pass the elements that are expected first first.
+	 *
+	 * @param upcomingElements The elements to render in the background
+	 * @return this, for method chaining
+	 */
+	public AppendableListView<T> prerender(Collection<? extends T> upcomingElements)
+	{
+		final Executor executor = getPrerenderExecutor();
+		if (executor == null || renderCacheSize <= 0)
+		{
+			return this;
+		}
+		if (prerenderedItems == null)
+		{
+			prerenderedItems = new HashMap<>();
+		}
+		takePrerenderedItems();
+		final Application application = getApplication();
+		final IMarkupFragment markup = getMarkup();
+		final List<Consumer<AppendableListView<T>>> renderers = new ArrayList<>();
+		for (final T element : upcomingElements)
+		{
+			if (prerenderedItems.size() >= renderCacheSize)
+			{
+				break;
+			}
+			final Object renderCacheKey = getRenderCacheKey(element);
+			if (renderCacheKey == null || prerenderedItems.containsKey(renderCacheKey) ||
+					(renderCache != null && renderCache.containsKey(renderCacheKey)))
+			{
+				continue;
+			}
+			// the markup ids are assigned here, so they are unique on the page
+			final String markupId = getMarkupId() + "_p" + prerenderCounter++;
+			final CompletableFuture<RenderedItem> renderedItem = new CompletableFuture<>();
+			prerenderedItems.put(renderCacheKey, renderedItem);
+			renderers.add(snapshot ->
+			{
+				try
+				{
+					renderedItem.complete(snapshot.prerenderItem(element, markupId, markup, application));
+				}
+				catch (RuntimeException e)
+				{
+					renderedItem.completeExceptionally(e);
+				}
+			});
+		}
+		if (!renderers.isEmpty())
+		{
+			// the executor must not touch this ListView, which is detached and serialized by the request thread
+			// while it is rendering. all items of this call are rendered on the same copy, one after another.
+			final AppendableListView<T> snapshot = WicketObjects.cloneObject(this);
+			executor.execute(() -> renderers.forEach(renderer -> renderer.accept(snapshot)));
+		}
+		return this;
+	}
+
+	/**
+	 * Render a ListItem for the given element on its own. Called on a snapshot of the ListView, see
+	 * {@link #prerender(Collection)}.
+	 */
+	private RenderedItem prerenderItem(T element, String markupId, IMarkupFragment markup, Application application)
+	{
+		final CharSequence rendered = new ComponentRenderer(application).renderComponent(() ->
+		{
+			final AppendableListItem item = new AppendableListItem(getId(), 0, () -> element);
+			item.prerenderMarkup = markup;
+			item.setMarkupId(markupId);
+			populateItem(item);
+			return item;
+		});
+		return new RenderedItem(markupId, rendered.toString());
+	}
+
+	/**
+	 * Move the items that are done pre-rendering to the render cache.
+	 */
+	private void takePrerenderedItems()
+	{
+		if (prerenderedItems == null)
+		{
+			return;
+		}
+		final Iterator<Map.Entry<Object, CompletableFuture<RenderedItem>>> entries =
+				prerenderedItems.entrySet().iterator();
+		while (entries.hasNext())
+		{
+			final Map.Entry<Object, CompletableFuture<RenderedItem>> entry = entries.next();
+			final CompletableFuture<RenderedItem> future = entry.getValue();
+			if (future.isDone())
+			{
+				entries.remove();
+				if (!future.isCompletedExceptionally())
+				{
+					putRenderedItem(entry.getKey(), future.join());
+				}
+			}
+		}
+	}
+
+	private void putRenderedItem(Object renderCacheKey, RenderedItem renderedItem)
+	{
+		if (renderCache == null)
+		{
+			renderCache = new LinkedHashMap<Object, RenderedItem>(16, 0.75f, true)
+			{
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Object, RenderedItem> eldest)
+				{
+					return size() > renderCacheSize;
+				}
+			};
+		}
+		renderCache.put(renderCacheKey, renderedItem);
+	}
+
+	/**
+	 * Keep up to <code>maxRecycledItems</code> ListItems that were removed via
+	 * {@link #removeItemFor(Object, AjaxRequestTarget)} and rebind them to new elements in
+	 * {@link #appendNewItemFor(Object, AjaxRequestTarget)}, instead of building a new component subtree for each
+	 * appended element. This is useful for lists that constantly append new elements and remove old ones, such as
+	 * rolling-window feeds. A recycled ListItem is <em>not</em> passed to {@link #populateItem(AppendableListItem)}
+	 * again, see {@link #onRecycleItem(AppendableListItem)}. The default is 0, which disables recycling.
+	 *
+	 * @param maxRecycledItems The maximum number of removed ListItems to keep for reuse
+	 * @return this, for method chaining
+	 */
+	public AppendableListView<T> setMaxRecycledItems(int maxRecycledItems)
+	{
+		this.maxRecycledItems = maxRecycledItems;
+		if (maxRecycledItems <= 0)
+		{
+			recycledItems = null;
+		}
+		return this;
+	}
+
+	public int getMaxRecycledItems()
+	{
+		return maxRecycledItems;
+	}
+
+	/**
+	 * Called when a recycled ListItem is rebound to a newly appended element, instead of
+	 * {@link #populateItem(AppendableListItem)}. When this is called, the ListItem already has the model and index
+	 * of the new element. The default implementation does nothing, which is enough if all children of the ListItem
+	 * get their data from the ListItem's model, e.g. via {@code new Label("label", item.getModel())}. Override this
+	 * to update any children that were populated with static values. The ListItem and all its children get new
+	 * markup ids, because the old ones may still be in use in the browser, so do not set fixed markup ids on them.
+	 *
+	 * @param item The recycled ListItem
+	 * @see #setMaxRecycledItems(int)
+	 */
+	protected void onRecycleItem(AppendableListItem item)
+	{
+
+	}
+
+	private void recycleItem(AppendableListItem item)
+	{
+		if (maxRecycledItems <= 0)
+		{
+			return;
+		}
+		if (recycledItems == null)
+		{
+			recycledItems = new HashMap<>();
+		}
+		if (recycledItems.size() < maxRecycledItems)
+		{
+			recycledItems.put(item.getId(), item);
+		}
+	}
+
+	private AppendableListItem takeRecycledItem(int index)
+	{
+		if (recycledItems == null)
+		{
+			return null;
+		}
+		// ListView identifies its items by their index, so we can only reuse an item that was created for the same
+		// index. With a rolling window, removing the oldest element frees up exactly the id that the next append
+		// needs.
+		final AppendableListItem item = recycledItems.remove(Integer.toString(index));
+		if (item != null)
+		{
+			item.setIndex(index);
+			item.setModel(getListItemModel(getModel(), index));
+			// the item's old markup id has been handed over to one of its siblings in #removeItemFor, so it needs a
+			// fresh one. the same goes for its children, whose old elements are still in the DOM.
+			item.setMarkupIdImpl(null);
+			item.visitChildren(Component.class, (child, visit) -> child.setMarkupIdImpl(null));
+		}
+		return item;
+	}
+
 	/**
 	 * Perform any special actions that need to be done on a ListItem being appended in an AJAX call. This could be used
 	 * to e.g. add fade-in animations or other such things. This method is called by
@@ -240,6 +987,17 @@ public abstract class AppendableListView<T> extends ListView<T>
 
 	public class AppendableListItem extends ListItem<T>
 	{
+		// see #setLazyHydration
+		private boolean placeholder = false;
+
+		// see #setRenderCacheSize. the markup to write instead of rendering this item, or the key to cache the
+		// rendered markup under.
+		private String cachedMarkup;
+		private Object renderCacheKey;
+
+		// see #prerender. the ListView's markup, for rendering this item on its own. null for regular items.
+		private transient IMarkupFragment prerenderMarkup;
+
 		public AppendableListItem(String id, int index, IModel<T> model)
 		{
 			super(id, index, model);
@@ -265,8 +1023,113 @@ public abstract class AppendableListView<T> extends ListView<T>
 		@Override
 		protected void onRender()
 		{
-			super.onRender();
-			AppendableListView.this.lastChild = this;
+			if (cachedMarkup != null)
+			{
+				getResponse().write(cachedMarkup);
+			}
+			else if (renderCacheKey != null)
+			{
+				final RequestCycle requestCycle = getRequestCycle();
+				final Response originalResponse = requestCycle.getResponse();
+				final StringResponse markup = new StringResponse();
+				requestCycle.setResponse(markup);
+				try
+				{
+					super.onRender();
+				}
+				finally
+				{
+					requestCycle.setResponse(originalResponse);
+				}
+				originalResponse.write(markup.getBuffer());
+				putRenderedItem(renderCacheKey, new RenderedItem(getMarkupId(), markup.toString()));
+				renderCacheKey = null;
+			}
+			else
+			{
+				super.onRender();
+			}
+			if (prerenderMarkup == null)
+			{
+				AppendableListView.this.lastChildMarkupId = getMarkupId();
+			}
+		}
+
+		@Override
+		public IMarkupFragment getMarkup()
+		{
+			return prerenderMarkup != null ? prerenderMarkup : super.getMarkup();
+		}
+
+		@Override
+		protected void onBeforeRender()
+		{
+			super.onBeforeRender();
+			if (prerenderMarkup != null)
+			{
+				// generated markup ids would come from the temporary page this is rendered on, so they would be the
+				// same in all pre-rendered items. they are derived from this item's unique one instead.
+				visitChildren(Component.class, (child, visit) ->
+				{
+					if (child.getOutputMarkupId() && child.getMarkupId(false) == null)
+					{
+						final StringBuilder markupId = new StringBuilder(child.getId());
+						for (Component parent = child.getParent(); parent != this; parent = parent.getParent())
+						{
+							markupId.insert(0, parent.getId() + "_");
+						}
+						child.setMarkupId(getMarkupId() + "_" + markupId);
+					}
+				});
+			}
+		}
+
+		@Override
+		protected void onComponentTag(ComponentTag tag)
+		{
+			super.onComponentTag(tag);
+			if (clientVirtualization)
+			{
+				// marks the elements that the client script may detach
+				tag.put("data-appendable-item", "");
+			}
+		}
+
+		@Override
+		public void renderHead(IHeaderResponse response)
+		{
+			super.renderHead(response);
+			if (placeholder && hydrationBehavior != null)
+			{
+				// every render replaces the element in the browser, e.g. when this item is recycled or the whole
+				// ListView is repainted, so the new one must be observed
+				response.render(OnDomReadyHeaderItem.forScript(
+						hydrationBehavior.getObserveScript(Collections.singleton(getMarkupId()))));
+			}
+		}
+
+		@Override
+		public void onComponentTagBody(MarkupStream markupStream, ComponentTag openTag)
+		{
+			if (placeholder)
+			{
+				// not populated yet, so there are no children to render the body with
+				getResponse().write(getPlaceholderMarkup(this));
+				markupStream.skipToMatchingCloseTag(openTag);
+			}
+			else
+			{
+				super.onComponentTagBody(markupStream, openTag);
+			}
+		}
+
+		/**
+		 * @return whether this item is a placeholder that has not been populated yet, see
+		 * {@link #setLazyHydration(boolean)}
+		 */
+		public boolean isPlaceholder()
+		{
+			return placeholder;
 		}
 
 		public String getItemTagName()
@@ -275,4 +1138,17 @@ public abstract class AppendableListView<T> extends ListView<T>
 			return markupStream.getTag().getName();
 		}
 	}
+
+	// the rendered markup of a ListItem, see #setRenderCacheSize
+	private static final class RenderedItem
+	{
+		private final String markupId;
+		private final String markup;
+
+		private RenderedItem(String markupId, String markup)
+		{
+			this.markupId = markupId;
+			this.markup = markup;
+		}
+	}
 }
@@ -24,25 +24,523 @@ var AppendableListView = {
 	},
 
 	appendAfter: function (existingId, newId, tagName) {
-		var existingElement = document.getElementById(existingId);
-		var parentElement = existingElement.parentElement;
 		var newElement = AppendableListView.newElement(newId, tagName);
-		// IE up to 8 doesn't know lastElementChild :-(
-		if (existingElement != parentElement.children[parentElement.children.length - 1]) {
-			existingElement = existingElement.nextElementSibling;
-			AppendableListView.insertBefore(existingElement.id, newId);
-		} else {
-			parentElement.appendChild(newElement);
+		var existingElement = document.getElementById(existingId);
+		if (!existingElement) {
+			// the existing element may have been detached by a virtualized list
+			var virtualList = AppendableListView.findVirtualList(existingId);
+			if (virtualList) {
+				virtualList.parent.insertBefore(newElement, virtualList.bottomSpacer);
+			}
+			return;
 		}
+		// insertBefore with a null reference node appends at the end
+		existingElement.parentElement.insertBefore(newElement, existingElement.nextSibling);
 	},
 
-	insertBefore: function (existingId, newId) {
+	// inserts all new elements with a single DOM operation
+	appendAllAfter: function (existingId, newIds, tagName) {
+		var fragment = document.createDocumentFragment();
+		for (var i = 0; i < newIds.length; i++) {
+			fragment.appendChild(AppendableListView.newElement(newIds[i], tagName));
+		}
 		var existingElement = document.getElementById(existingId);
+		if (!existingElement) {
+			var virtualList = AppendableListView.findVirtualList(existingId);
+			if (virtualList) {
+				virtualList.parent.insertBefore(fragment, virtualList.bottomSpacer);
+			}
+			return;
+		}
+		existingElement.parentElement.insertBefore(fragment, existingElement.nextSibling);
+	},
+
+	// fetches rendered items as newline-delimited JSON and inserts each chunk after the previous one as soon as it
+	// arrives, see AppendableListView#streamNewItemsFor
+	stream: function (url, existingId) {
+		var insertChunk = function (html) {
+			var template = document.createElement('template');
+			template.innerHTML = html;
+			var lastElement = template.content.lastElementChild;
+			if (!lastElement) {
+				return true;
+			}
+			var existingElement = document.getElementById(existingId);
+			if (existingElement) {
+				existingElement.parentElement.insertBefore(template.content, existingElement.nextSibling);
+			} else {
+				var virtualList = AppendableListView.findVirtualList(existingId);
+				if (!virtualList) {
+					// the list was repainted in the meantime, it has all items now
+					return false;
+				}
+				virtualList.parent.insertBefore(template.content, virtualList.bottomSpacer);
+			}
+			existingId = lastElement.id;
+			return true;
+		};
+		return fetch(url, {credentials: 'same-origin'}).then(function (response) {
+			var reader = response.body.getReader();
+			var decoder = new TextDecoder();
+			var buffer = '';
+			var read = function () {
+				return reader.read().then(function (result) {
+					if (result.value) {
+						buffer += decoder.decode(result.value, {stream: true});
+					}
+					var lines = buffer.split('\n');
+					// the last line is incomplete until it is terminated
+					buffer = lines.pop();
+					for (var i = 0; i < lines.length; i++) {
+						if (lines[i] && !insertChunk(JSON.parse(lines[i]).html)) {
+							return reader.cancel();
+						}
+					}
+					if (!result.done) {
+						return read();
+					}
+				});
+			};
+			return read();
+		});
 	},
 
 	removeItem: function (elementId) {
+		var virtualList = AppendableListView.findVirtualList(elementId);
+		if (virtualList) {
+			virtualList.remove(elementId);
+		}
 		var elementToRemove = document.getElementById(elementId);
-		var parentElement = elementToRemove.parentElement;
-		parentElement.removeChild(elementToRemove);
+		if (elementToRemove) {
+			var parentElement = elementToRemove.parentElement;
+			parentElement.removeChild(elementToRemove);
+		}
+	},
+
+	// virtualized lists by container markup id, see AppendableListView#setClientVirtualization
+	virtualLists: {},
+
+	virtualize: function (containerId, overscan) {
+		var container = document.getElementById(containerId);
+		var firstItem = container ? container.querySelector('[data-appendable-item]') : null;
+		if (!firstItem) {
+			// nothing to do yet. appending the first item repaints the container, which brings us back here.
+			delete AppendableListView.virtualLists[containerId];
+			return;
+		}
+		var previous = AppendableListView.virtualLists[containerId];
+		if (previous) {
+			previous.destroy();
+		}
+		AppendableListView.virtualLists[containerId] =
+			new AppendableListView.VirtualList(firstItem.parentElement, firstItem.tagName, overscan);
+	},
+
+	refreshVirtualization: function (containerId, overscan) {
+		var virtualList = AppendableListView.virtualLists[containerId];
+		if (virtualList) {
+			virtualList.overscan = overscan;
+			virtualList.registerNewItems();
+			virtualList.update();
+		} else {
+			AppendableListView.virtualize(containerId, overscan);
+		}
+	},
+
+	findVirtualList: function (itemId) {
+		for (var containerId in AppendableListView.virtualLists) {
+			if (AppendableListView.virtualLists.hasOwnProperty(containerId)) {
+				var virtualList = AppendableListView.virtualLists[containerId];
+				if (virtualList.indexOf(itemId) >= 0) {
+					return virtualList;
+				}
+			}
+		}
+		return null;
+	},
+
+	/*
+	 * Keeps only the items near the viewport attached to the DOM. The other items are detached and kept here, and
+	 * two spacer elements before and after the attached items take up the height of the detached ones, so the
+	 * scroll height stays the same.
+	 */
+	VirtualList: function (parent, tagName, overscan) {
+		var self = this;
+		self.parent = parent;
+		// how many pixels above and below the viewport are kept attached
+		self.overscan = overscan;
+		self.items = [];
+		self.topSpacer = AppendableListView.newSpacer(tagName);
+		self.bottomSpacer = AppendableListView.newSpacer(tagName);
+		parent.insertBefore(self.topSpacer, parent.firstChild);
+		parent.appendChild(self.bottomSpacer);
+		self.scrollElement = AppendableListView.findScrollElement(parent);
+
+		self.indexOf = function (id) {
+			for (var i = self.items.length - 1; i >= 0; i--) {
+				if (self.items[i].id === id) {
+					return i;
+				}
+			}
+			return -1;
+		};
+
+		self.registerNewItems = function () {
+			var lastItem = self.items.length > 0 ? self.items[self.items.length - 1] : null;
+			var children = parent.querySelectorAll('[data-appendable-item]');
+			for (var i = 0; i < children.length; i++) {
+				var element = children[i];
+				if (element.parentElement !== parent) {
+					continue;
+				}
+				var index = self.indexOf(element.id);
+				if (index >= 0) {
+					// wicket may have replaced the element
+					self.items[index].element = element;
+				} else {
+					var attached = !lastItem || lastItem.attached;
+					if (!attached) {
+						// new items are inserted at the end of the attached ones. if the previous last item is
+						// detached, the new one can't stay there without messing up the order.
+						parent.removeChild(element);
+					}
+					self.items.push({id: element.id, element: element, height: 0, attached: attached});
+				}
+			}
+		};
+
+		self.remove = function (id) {
+			var index = self.indexOf(id);
+			if (index >= 0) {
+				self.items.splice(index, 1);
+				self.scheduleUpdate();
+			}
+		};
+
+		self.estimatedHeight = function () {
+			var sum = 0, count = 0;
+			for (var i = 0; i < self.items.length; i++) {
+				if (self.items[i].height > 0) {
+					sum += self.items[i].height;
+					count++;
+				}
+			}
+			return count > 0 ? sum / count : 20;
+		};
+
+		self.update = function () {
+			self.updateScheduled = false;
+			var items = self.items;
+			for (var i = 0; i < items.length; i++) {
+				if (items[i].attached) {
+					items[i].height = items[i].element.offsetHeight || items[i].height;
+				}
+			}
+			var estimate = self.estimatedHeight();
+			var viewTop, viewBottom;
+			if (self.scrollElement === window) {
+				viewTop = 0;
+				viewBottom = window.innerHeight;
+			} else {
+				var rect = self.scrollElement.getBoundingClientRect();
+				viewTop = rect.top;
+				viewBottom = rect.bottom;
+			}
+			viewTop -= self.overscan;
+			viewBottom += self.overscan;
+
+			// find the range of items that overlaps the viewport
+			var y = self.topSpacer.getBoundingClientRect().top;
+			var first = -1, last = -1;
+			for (var j = 0; j < items.length; j++) {
+				var height = items[j].height || estimate;
+				if (y + height >= viewTop && y <= viewBottom) {
+					if (first < 0) {
+						first = j;
+					}
+					last = j;
+				}
+				y += height;
+			}
+
+			// detach what's out of range. the attached items are always a contiguous range, so afterwards they are
+			// somewhere within [first, last].
+			var firstAttached = -1;
+			for (var k = 0; k < items.length; k++) {
+				if (items[k].attached && (k < first || k > last)) {
+					parent.removeChild(items[k].element);
+					items[k].attached = false;
+				} else if (items[k].attached && firstAttached < 0) {
+					firstAttached = k;
+				}
+			}
+			// fill in what's missing before and after the attached items
+			for (var m = first; m >= 0 && m <= last; m++) {
+				if (!items[m].attached) {
+					var reference = firstAttached >= 0 && m < firstAttached ?
+						items[firstAttached].element : self.bottomSpacer;
+					parent.insertBefore(items[m].element, reference);
+					items[m].attached = true;
+				}
+			}
+			var topHeight = 0, bottomHeight = 0;
+			for (var n = 0; n < items.length; n++) {
+				if (n < first || first < 0) {
+					topHeight += items[n].height || estimate;
+				} else if (n > last) {
+					bottomHeight += items[n].height || estimate;
+				}
+			}
+			self.topSpacer.style.height = topHeight + 'px';
+			self.bottomSpacer.style.height = bottomHeight + 'px';
+		};
+
+		self.scheduleUpdate = function () {
+			if (!self.updateScheduled) {
+				self.updateScheduled = true;
+				window.requestAnimationFrame(self.update);
+			}
+		};
+
+		self.destroy = function () {
+			self.scrollElement.removeEventListener('scroll', self.scheduleUpdate);
+			window.removeEventListener('resize', self.scheduleUpdate);
+		};
+
+		self.registerNewItems();
+		self.scrollElement.addEventListener('scroll', self.scheduleUpdate);
+		window.addEventListener('resize', self.scheduleUpdate);
+		self.update();
+	},
+
+	newSpacer: function (tagName) {
+		var spacer = document.createElement(tagName);
+		spacer.setAttribute('data-appendable-spacer', '');
+		spacer.setAttribute('aria-hidden', 'true');
+		spacer.style.visibility = 'hidden';
+		spacer.style.margin = '0';
+		spacer.style.padding = '0';
+		spacer.style.border = '0';
+		spacer.style.height = '0';
+		return spacer;
+	},
+
+	findScrollElement: function (element) {
+		for (var current = element; current && current !== document.body; current = current.parentElement) {
+			var overflow = window.getComputedStyle(current).overflowY;
+			if (overflow === 'auto' || overflow === 'scroll') {
+				return current;
+			}
+		}
+		return window;
+	},
+
+	// one IntersectionObserver per hydration callback url
+	hydrationObservers: {},
+
+	hydrateWhenVisible: function (callbackUrl, ids) {
+		if (!window.IntersectionObserver) {
+			// no way to tell what's visible, so just hydrate everything right away
+			AppendableListView.requestHydration(callbackUrl, ids);
+			return;
+		}
+		var observer = AppendableListView.hydrationObservers[callbackUrl];
+		if (!observer) {
+			observer = new IntersectionObserver(function (entries) {
+				// the observer reports all elements that changed visibility in the same frame together, so they
+				// can be hydrated in one request
+				var visibleIds = [];
+				for (var i = 0; i < entries.length; i++) {
+					if (entries[i].isIntersecting) {
+						visibleIds.push(entries[i].target.id);
+						observer.unobserve(entries[i].target);
+					}
+				}
+				if (visibleIds.length > 0) {
+					AppendableListView.requestHydration(callbackUrl, visibleIds);
+				}
+			});
+			AppendableListView.hydrationObservers[callbackUrl] = observer;
+		}
+		for (var i = 0; i < ids.length; i++) {
+			var element = document.getElementById(ids[i]);
+			if (element) {
+				observer.observe(element);
+			}
+		}
+	},
+
+	requestHydration: function (callbackUrl, ids) {
+		Wicket.Ajax.get({u: callbackUrl, ep: {ids: ids.join(',')}});
+	},
+
+	// one IntersectionObserver per load-more callback url, watching the last item
+	loadMoreObservers: {},
+
+	loadWhenVisible: function (callbackUrl, elementId) {
+		var element = document.getElementById(elementId);
+		if (!element || !window.IntersectionObserver) {
+			return;
+		}
+		var observer = AppendableListView.loadMoreObservers[callbackUrl];
+		if (observer) {
+			// only the current last item is of interest
+			observer.disconnect();
+		}
+		observer = new IntersectionObserver(function (entries) {
+			for (var i = 0; i < entries.length; i++) {
+				if (entries[i].isIntersecting) {
+					// the server arms the observer again after loading
+					observer.disconnect();
+					Wicket.Ajax.get({u: callbackUrl});
+					return;
+				}
+			}
+		});
+		AppendableListView.loadMoreObservers[callbackUrl] = observer;
+		observer.observe(element);
+	},
+
+	// the state of the StatelessAppendableListViews on the page, by their key. the server does not keep any state
+	// for them, so the client sends the offset to continue at with each request for more items.
+	statelessLists: {},
+
+	initStateless: function (key, callbackUrl, parentId, lastId, offset, hasMore) {
+		AppendableListView.statelessLists[key] = {
+			url: callbackUrl,
+			parentId: parentId,
+			lastId: lastId,
+			offset: offset,
+			hasMore: hasMore,
+			loading: false
+		};
+	},
+
+	loadMoreStateless: function (key) {
+		var list = AppendableListView.statelessLists[key];
+		if (!list || !list.hasMore || list.loading) {
+			return;
+		}
+		list.loading = true;
+		Wicket.Ajax.get({
+			u: list.url,
+			ep: {offset: list.offset},
+			coh: [function () {
+				list.loading = false;
+			}]
+		});
+	},
+
+	appendStateless: function (key, newIds, tagName) {
+		var list = AppendableListView.statelessLists[key];
+		var fragment = document.createDocumentFragment();
+		for (var i = 0; i < newIds.length; i++) {
+			fragment.appendChild(AppendableListView.newElement(newIds[i], tagName));
+		}
+		var lastElement = list.lastId ? document.getElementById(list.lastId) : null;
+		if (lastElement) {
+			lastElement.parentElement.insertBefore(fragment, lastElement.nextSibling);
+		} else {
+			// the list was empty
+			document.getElementById(list.parentId).appendChild(fragment);
+		}
+		list.lastId = newIds[newIds.length - 1];
+	},
+
+	statelessLoaded: function (key, offset, hasMore) {
+		var list = AppendableListView.statelessLists[key];
+		list.offset = offset;
+		list.hasMore = hasMore;
+	},
+
+	/*
+	 * Keeps the content of recently shown pages of a paged container, so going back to one of them does not need a
+	 * server round trip. When wicket replaces the container, its child nodes are moved into a detached copy of the
+	 * container instead of being thrown away. That way they keep their event handlers and can be moved back in later.
+	 */
+	PageCache: {
+		// cache state by container markup id
+		caches: {},
+
+		// called after each full render of the container. pages that contain callbacks to their items are not
+		// cacheable, because the server recreates the items when the page changes.
+		shown: function (containerId, page, callbackUrl, maxPages, cacheable) {
+			var cache = AppendableListView.PageCache.caches[containerId];
+			if (!cache) {
+				cache = {pages: {}, order: []};
+				AppendableListView.PageCache.caches[containerId] = cache;
+				Wicket.Event.subscribe('/dom/node/removing', function (jqEvent, element) {
+					if (element.id === containerId && cache.current !== undefined && cache.cacheable) {
+						AppendableListView.PageCache.stash(cache, cache.current, element);
+					}
+				});
+			}
+			cache.current = page;
+			cache.cacheable = cacheable;
+			cache.callbackUrl = callbackUrl;
+			cache.maxPages = maxPages;
+			// whatever was cached for this page is outdated now
+			AppendableListView.PageCache.drop(cache, page);
+		},
+
+		stash: function (cache, page, element) {
+			var copy = element.cloneNode(false);
+			while (element.firstChild) {
+				copy.appendChild(element.firstChild);
+			}
+			AppendableListView.PageCache.drop(cache, page);
+			cache.pages[page] = copy;
+			cache.order.push(page);
+			while (cache.order.length > cache.maxPages) {
+				delete cache.pages[cache.order.shift()];
+			}
+		},
+
+		drop: function (cache, page) {
+			delete cache.pages[page];
+			var index = cache.order.indexOf(page);
+			if (index >= 0) {
+				cache.order.splice(index, 1);
+			}
+		},
+
+		// shows the given page from the cache. returns false if it isn't cached, so the caller can ask the server.
+		show: function (containerId, page) {
+			var cache = AppendableListView.PageCache.caches[containerId];
+			var container = document.getElementById(containerId);
+			var cached = cache ? cache.pages[page] : null;
+			if (!cached || !container) {
+				return false;
+			}
+			AppendableListView.PageCache.drop(cache, page);
+			if (cache.cacheable) {
+				AppendableListView.PageCache.stash(cache, cache.current, container);
+			} else {
+				while (container.firstChild) {
+					container.removeChild(container.firstChild);
+				}
+			}
+			while (cached.firstChild) {
+				container.appendChild(cached.firstChild);
+			}
+			cache.current = page;
+			// only cacheable pages are in the cache
+			cache.cacheable = true;
+			// the server needs to know the current page, but doesn't need to render anything
+			Wicket.Ajax.get({u: cache.callbackUrl, ep: {page: page}});
+			return true;
+		},
+
+		// drops the cached pages starting with the given one, because their content has changed
+		invalidate: function (containerId, fromPage) {
+			var cache = AppendableListView.PageCache.caches[containerId];
+			if (cache) {
+				for (var page in cache.pages) {
+					if (cache.pages.hasOwnProperty(page) && Number(page) >= fromPage) {
+						AppendableListView.PageCache.drop(cache, Number(page));
+					}
+				}
+			}
+		}
 	}
 };
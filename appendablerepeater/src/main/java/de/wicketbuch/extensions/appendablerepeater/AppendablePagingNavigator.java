@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import org.apache.wicket.ajax.attributes.AjaxRequestAttributes;
+import org.apache.wicket.ajax.attributes.IAjaxCallListener;
+import org.apache.wicket.ajax.markup.html.navigation.paging.AjaxPagingNavigation;
+import org.apache.wicket.ajax.markup.html.navigation.paging.AjaxPagingNavigationIncrementLink;
+import org.apache.wicket.ajax.markup.html.navigation.paging.AjaxPagingNavigationLink;
+import org.apache.wicket.ajax.markup.html.navigation.paging.AjaxPagingNavigator;
+import org.apache.wicket.markup.html.link.AbstractLink;
+import org.apache.wicket.markup.html.link.Link;
+import org.apache.wicket.markup.html.navigation.paging.IPageable;
+import org.apache.wicket.markup.html.navigation.paging.IPagingLabelProvider;
+import org.apache.wicket.markup.html.navigation.paging.PagingNavigation;
+
+/**
+ * An {@link AjaxPagingNavigator} for {@link AppendableGridView} whose links use the client page cache (see
+ * {@link AppendableGridView#setClientPageCacheSize(int)}): if the page a link goes to is cached in the browser, it is
+ * shown from there without rendering it on the server. Put this navigator inside the parent of the grid, so it is
+ * cached along with the items.
+ */
+public class AppendablePagingNavigator extends AjaxPagingNavigator
+{
+	private final AppendableGridView<?> gridView;
+
+	public AppendablePagingNavigator(String id, AppendableGridView<?> gridView)
+	{
+		super(id, gridView);
+		this.gridView = gridView;
+	}
+
+	@Override
+	protected AbstractLink newPagingNavigationIncrementLink(String id, IPageable pageable, int increment)
+	{
+		return new AjaxPagingNavigationIncrementLink(id, pageable, increment)
+		{
+			@Override
+			protected void updateAjaxAttributes(AjaxRequestAttributes attributes)
+			{
+				super.updateAjaxAttributes(attributes);
+				addPageCacheListener(attributes, getPageNumber());
+			}
+		};
+	}
+
+	@Override
+	protected AbstractLink newPagingNavigationLink(String id, IPageable pageable, int pageNumber)
+	{
+		return new AjaxPagingNavigationLink(id, pageable, pageNumber)
+		{
+			@Override
+			protected void updateAjaxAttributes(AjaxRequestAttributes attributes)
+			{
+				super.updateAjaxAttributes(attributes);
+				addPageCacheListener(attributes, getPageNumber());
+			}
+		};
+	}
+
+	@Override
+	protected PagingNavigation newNavigation(String id, IPageable pageable, IPagingLabelProvider labelProvider)
+	{
+		return new AjaxPagingNavigation(id, pageable, labelProvider)
+		{
+			@Override
+			protected Link<?> newPagingNavigationLink(String id, IPageable pageable, long pageIndex)
+			{
+				return new AjaxPagingNavigationLink(id, pageable, pageIndex)
+				{
+					@Override
+					protected void updateAjaxAttributes(AjaxRequestAttributes attributes)
+					{
+						super.updateAjaxAttributes(attributes);
+						addPageCacheListener(attributes, getPageNumber());
+					}
+				};
+			}
+		};
+	}
+
+	private void addPageCacheListener(AjaxRequestAttributes attributes, long page)
+	{
+		final IAjaxCallListener listener = gridView.getClientPageCacheListener(page);
+		if (listener != null)
+		{
+			attributes.getAjaxCallListeners().add(listener);
+		}
+	}
+}
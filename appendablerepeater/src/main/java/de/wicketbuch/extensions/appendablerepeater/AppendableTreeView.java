@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import static de.wicketbuch.extensions.appendablerepeater.AppendableListView.SCRIPT;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.extensions.markup.html.repeater.tree.ITreeProvider;
+import org.apache.wicket.markup.MarkupStream;
+import org.apache.wicket.markup.head.IHeaderResponse;
+import org.apache.wicket.markup.head.JavaScriptHeaderItem;
+import org.apache.wicket.markup.repeater.AbstractRepeater;
+import org.apache.wicket.markup.repeater.Item;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.util.io.IClusterable;
+
+/**
+ * A repeater for trees, such as comment threads, that can dynamically append children under any node via AJAX,
+ * without repainting the node's subtree or the entire tree. All nodes are shown, the tree cannot be collapsed.
+ * <p>
+ * The nodes are rendered as a flat list of siblings in depth-first order, i.e. each node is followed by its children,
+ * each of them followed by its own children. Use {@link AppendableTreeItem#getDepth()} in {@link
+ * #populateItem(AppendableTreeItem)} to indent them, e.g. with a CSS class or style per depth. This way a new child
+ * is just an element inserted after the last rendered descendant of its parent, no matter how deep it is.
+ * <p>
+ * Add the new child to your model, so the {@link ITreeProvider} returns it under its parent, and then call {@link
+ * #childAppended(Object, Object, AjaxRequestTarget)}. The rendered nodes are indexed by their {@link #getNodeKey(Object)
+ * key}, so the parent is found without looking at the other nodes. Override {@link
+ * #onAppendItem(AppendableTreeItem, AjaxRequestTarget)} to animate new nodes.
+ * <p>
+ * This needs wicket-extensions for {@link ITreeProvider}, which is an optional dependency of this library.
+ *
+ * @param <T> The node type
+ */
+public abstract class AppendableTreeView<T> extends AbstractRepeater
+{
+	private final ITreeProvider<T> provider;
+
+	/**
+	 * The rendered nodes by their {@link #getNodeKey(Object) key}. Rebuilt on each full render.
+	 */
+	private Map<Object, RenderedNode> renderedNodes = new HashMap<>();
+
+	/**
+	 * Stands in as the parent of the roots. Its last descendant is the last rendered item, or null if there is none.
+	 */
+	private RenderedNode root = new RenderedNode(null, null);
+
+	/**
+	 * The tag used for the items. This is lazily determined and then cached.
+	 */
+	private String itemTagName;
+
+	private int nextIndex;
+
+	public AppendableTreeView(String id, ITreeProvider<T> provider)
+	{
+		super(id);
+		this.provider = provider;
+	}
+
+	public ITreeProvider<T> getProvider()
+	{
+		return provider;
+	}
+
+	@Override
+	protected void onInitialize()
+	{
+		super.onInitialize();
+		// we will need the parent to re-render in case we are appending to a previously empty tree, so we tell it
+		// to have a markup id.
+		getParent().setOutputMarkupId(true);
+	}
+
+	@Override
+	protected void onPopulate()
+	{
+		// this is a full render, so all items are recreated in depth-first order
+		removeAll();
+		renderedNodes = new HashMap<>();
+		root = new RenderedNode(null, null);
+		nextIndex = 0;
+		addItems(provider.getRoots(), root);
+	}
+
+	private void addItems(Iterator<? extends T> nodes, RenderedNode parent)
+	{
+		while (nodes.hasNext())
+		{
+			final T node = nodes.next();
+			addItem(node, parent);
+			final RenderedNode renderedNode = renderedNodes.get(getNodeKey(node));
+			if (provider.hasChildren(node))
+			{
+				addItems(provider.getChildren(node), renderedNode);
+			}
+			parent.lastDescendantMarkupId = renderedNode.lastDescendantMarkupId;
+		}
+	}
+
+	private AppendableTreeItem addItem(T node, RenderedNode parent)
+	{
+		final int index = nextIndex++;
+		final AppendableTreeItem item =
+				newItem(String.valueOf(index), index, provider.model(node), parent.depth + 1);
+		populateItem(item);
+		add(item);
+		renderedNodes.put(getNodeKey(node), new RenderedNode(item.getMarkupId(), parent));
+		return item;
+	}
+
+	@Override
+	protected Iterator<? extends Component> renderIterator()
+	{
+		return iterator();
+	}
+
+	/**
+	 * Create a new item. You won't normally need to override this.
+	 *
+	 * @param id    the item's component id
+	 * @param index the item's index. This counts the items in the order they were created, it is not their
+	 *              position in the tree.
+	 * @param model the node's model
+	 * @param depth the node's depth, 0 for the roots
+	 */
+	protected AppendableTreeItem newItem(String id, int index, IModel<T> model, int depth)
+	{
+		return new AppendableTreeItem(id, index, model, depth);
+	}
+
+	protected abstract void populateItem(AppendableTreeItem item);
+
+	/**
+	 * Return the key the given node is indexed by, to find it as the parent in {@link #childAppended(Object, Object,
+	 * AjaxRequestTarget)}. The default is the node itself, override this if your nodes don't implement {@code
+	 * equals} and {@code hashCode}, e.g. to return their database id.
+	 */
+	protected Object getNodeKey(T node)
+	{
+		return node;
+	}
+
+	/**
+	 * Call this after adding <code>child</code> under <code>parent</code> in the model, so the {@link ITreeProvider}
+	 * returns it as the last child of <code>parent</code>. It is then rendered via AJAX and inserted after the last
+	 * rendered descendant of <code>parent</code>. If <code>ajax</code> is null, nothing happens, the next full render
+	 * will render it as well. If the tree was empty or <code>parent</code> is not rendered, the tree's parent is
+	 * repainted instead.
+	 *
+	 * @param parent the parent of the new node, or null if the new node is a root
+	 * @param child  the new node
+	 * @param ajax   the currently active {@link AjaxRequestTarget}
+	 * @return this, for method chaining
+	 */
+	public AppendableTreeView<T> childAppended(T parent, T child, AjaxRequestTarget ajax)
+	{
+		if (ajax == null)
+		{
+			return this;
+		}
+		final RenderedNode parentNode = parent == null ? root : renderedNodes.get(getNodeKey(parent));
+		if (parentNode == null || root.lastDescendantMarkupId == null)
+		{
+			// there is nothing to insert the new node after -> redraw from parent
+			ajax.add(getParent());
+			return this;
+		}
+		final String previousMarkupId = parentNode.lastDescendantMarkupId;
+		final AppendableTreeItem newItem = addItem(child, parentNode);
+		if (itemTagName == null)
+		{
+			itemTagName = new MarkupStream(newItem.getMarkup()).getTag().getName();
+		}
+		ajax.prependJavaScript(String.format("AppendableListView.appendAfter('%s', '%s', '%s');",
+				previousMarkupId, newItem.getMarkupId(), itemTagName));
+		ajax.add(newItem);
+		onAppendItem(newItem, ajax);
+
+		// the new node is now the last descendant of its parent, and of all ancestors whose subtree ended where the
+		// parent's did
+		for (RenderedNode ancestor = parentNode;
+				ancestor != null && previousMarkupId.equals(ancestor.lastDescendantMarkupId);
+				ancestor = ancestor.parent)
+		{
+			ancestor.lastDescendantMarkupId = newItem.getMarkupId();
+		}
+		return this;
+	}
+
+	/**
+	 * Called for each node that was inserted by {@link #childAppended(Object, Object, AjaxRequestTarget)}, e.g. to
+	 * animate it.
+	 *
+	 * @param newItem the new node's item
+	 * @param ajax    the currently active {@link AjaxRequestTarget}
+	 */
+	protected void onAppendItem(AppendableTreeItem newItem, AjaxRequestTarget ajax)
+	{
+
+	}
+
+	@Override
+	public void renderHead(IHeaderResponse response)
+	{
+		super.renderHead(response);
+		response.render(JavaScriptHeaderItem.forReference(SCRIPT));
+	}
+
+	@Override
+	protected void onDetach()
+	{
+		provider.detach();
+		super.onDetach();
+	}
+
+	public class AppendableTreeItem extends Item<T>
+	{
+		private final int depth;
+
+		public AppendableTreeItem(String id, int index, IModel<T> model, int depth)
+		{
+			super(id, index, model);
+			this.depth = depth;
+			setOutputMarkupId(true);
+		}
+
+		/**
+		 * @return the depth of this node in the tree, 0 for the roots
+		 */
+		public int getDepth()
+		{
+			return depth;
+		}
+	}
+
+	/**
+	 * What we need to know about a rendered node to insert children after it.
+	 */
+	private static final class RenderedNode implements IClusterable
+	{
+		private final RenderedNode parent;
+
+		private final int depth;
+
+		/**
+		 * The markup id of the last rendered node in this node's subtree, which is this node itself if it has no
+		 * children.
+		 */
+		private String lastDescendantMarkupId;
+
+		RenderedNode(String markupId, RenderedNode parent)
+		{
+			this.parent = parent;
+			this.depth = parent == null ? -1 : parent.depth + 1;
+			this.lastDescendantMarkupId = markupId;
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.wicket.markup.repeater.data.IDataProvider;
+import org.apache.wicket.model.IModel;
+
+/**
+ * A decorator for an {@link IDataProvider} that keeps recently read items in memory, so that overlapping reads do
+ * not hit the database again. This happens a lot with the appendable repeaters, e.g. when
+ * {@link AppendableGridView#itemsAppended(org.apache.wicket.ajax.AjaxRequestTarget)} reads the new items and then
+ * jumps to their page, which reads the same items again.
+ * <p>
+ * The items are read and cached in blocks of a fixed size, aligned to multiples of that size. Choose the block size
+ * to match the page size of the repeater, so each page is one block. Only the given number of blocks is kept, the
+ * least recently used ones are dropped first.
+ * <p>
+ * Like the appendable repeaters, this assumes that items are only appended: blocks that were full when they were read
+ * stay valid. The last block is usually not full, so it is dropped as soon as the size grows, to pick up the new
+ * items. If items are changed or removed in any other way, call {@link #invalidate()}. The size itself is cached
+ * until the provider is detached.
+ * <p>
+ * The cached items are not serialized. Access to the cache is synchronized, so this can be used with a {@link
+ * AppendableGridView#getPrefetchExecutor() prefetch executor}, as long as the delegate is thread-safe as well.
+ *
+ * @param <T> The item type
+ */
+public class CachingDataProvider<T> implements IAppendableDataProvider<T>
+{
+	private final IDataProvider<T> delegate;
+
+	private final int blockSize;
+
+	private final int maxBlocks;
+
+	/**
+	 * The cached blocks by their index, i.e. their offset divided by the block size, in LRU order.
+	 */
+	private transient Map<Long, List<T>> blocks;
+
+	/**
+	 * The size reported by the delegate in this request, -1 if unknown.
+	 */
+	private volatile long cachedSize = -1;
+
+	/**
+	 * @param delegate  The provider to read items from
+	 * @param blockSize The number of items that are read and cached together
+	 * @param maxBlocks The maximum number of blocks to keep
+	 */
+	public CachingDataProvider(IDataProvider<T> delegate, int blockSize, int maxBlocks)
+	{
+		if (blockSize < 1 || maxBlocks < 1)
+		{
+			throw new IllegalArgumentException("blockSize and maxBlocks must be at least 1");
+		}
+		this.delegate = delegate;
+		this.blockSize = blockSize;
+		this.maxBlocks = maxBlocks;
+	}
+
+	@Override
+	public Iterator<? extends T> iterator(long first, long count)
+	{
+		if (count <= 0)
+		{
+			return Collections.emptyIterator();
+		}
+		final List<T> items = new ArrayList<>();
+		final long end = first + count;
+		for (long block = first / blockSize; block * blockSize < end; block++)
+		{
+			final long blockStart = block * blockSize;
+			final List<T> blockItems = getBlock(block);
+			final int from = (int) Math.max(0, first - blockStart);
+			final int to = (int) Math.min(blockItems.size(), end - blockStart);
+			if (from >= to)
+			{
+				break;
+			}
+			items.addAll(blockItems.subList(from, to));
+			if (blockItems.size() < blockSize)
+			{
+				// the data ends in this block
+				break;
+			}
+		}
+		return items.iterator();
+	}
+
+	private synchronized List<T> getBlock(long block)
+	{
+		if (blocks == null)
+		{
+			blocks = new LinkedHashMap<Long, List<T>>(maxBlocks, 0.75f, true)
+			{
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Long, List<T>> eldest)
+				{
+					return size() > maxBlocks;
+				}
+			};
+		}
+		List<T> blockItems = blocks.get(block);
+		if (blockItems == null)
+		{
+			blockItems = new ArrayList<>(blockSize);
+			final Iterator<? extends T> iterator = delegate.iterator(block * blockSize, blockSize);
+			while (iterator.hasNext())
+			{
+				blockItems.add(iterator.next());
+			}
+			blocks.put(block, blockItems);
+		}
+		return blockItems;
+	}
+
+	@Override
+	public long size()
+	{
+		if (cachedSize < 0)
+		{
+			sizeChanged(delegate.size());
+		}
+		return cachedSize;
+	}
+
+	@Override
+	public long countAppendedSince(long knownSize)
+	{
+		final long appended;
+		if (delegate instanceof IAppendableDataProvider)
+		{
+			appended = ((IAppendableDataProvider<T>) delegate).countAppendedSince(knownSize);
+		}
+		else
+		{
+			appended = delegate.size() - knownSize;
+		}
+		sizeChanged(knownSize + appended);
+		return appended;
+	}
+
+	private synchronized void sizeChanged(long size)
+	{
+		if (cachedSize >= 0 && size <= cachedSize)
+		{
+			return;
+		}
+		cachedSize = size;
+		if (blocks != null)
+		{
+			// blocks that were not full may have more items now
+			blocks.values().removeIf(blockItems -> blockItems.size() < blockSize);
+		}
+	}
+
+	/**
+	 * Drop all cached items and the cached size, e.g. because items were changed or removed.
+	 */
+	public synchronized void invalidate()
+	{
+		blocks = null;
+		cachedSize = -1;
+	}
+
+	@Override
+	public IModel<T> model(T object)
+	{
+		return delegate.model(object);
+	}
+
+	@Override
+	public void detach()
+	{
+		cachedSize = -1;
+		delegate.detach();
+	}
+}
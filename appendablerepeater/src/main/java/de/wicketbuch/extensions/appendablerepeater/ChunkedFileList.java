@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileDeleteStrategy;
+import org.apache.wicket.Application;
+import org.apache.wicket.Session;
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.util.file.FileCleaner;
+import org.apache.wicket.util.file.IFileCleaner;
+
+/**
+ * An append-only {@link List} for very long {@link AppendableListView}s. Only the most recently added elements (the
+ * "tail", up to one chunk) are kept in memory. Whenever the tail is full, it is written to a chunk file, and later
+ * reads of these elements go through a memory-mapped view of that file. The heap usage therefore stays flat no
+ * matter how many elements are added.
+ * <p>
+ * This list supports exactly the operations that {@link AppendableListView} needs for appending: adding at the
+ * end, indexed reads and {@link #size()}. Inserting, replacing or removing single elements is not supported, so
+ * {@link AppendableListView#removeItemFor(Object, org.apache.wicket.ajax.AjaxRequestTarget)} can't be used with it.
+ * <p>
+ * The elements are written using Java serialization, so they must be {@link Serializable}. Reading an element from a
+ * chunk file returns a new copy of it. The list itself is serializable as well, so it can be used in a model that is
+ * stored with the page. A chunk file never changes once it is written, so the serialized form only contains the
+ * names of the chunk files and the tail, and all copies of a list share the chunk files that were written before
+ * they were copied. Chunks that a copy writes later get new files, so every stored page version keeps its own
+ * elements.
+ * <p>
+ * Each list writes its chunk files to its own new directory. Since stored page versions may need them, the chunk
+ * files are not deleted by {@link #clear()}, but together with the directory by the application's {@link
+ * IFileCleaner}, once neither a copy of the list nor the session it was created in is around anymore.
+ *
+ * @param <T> The list element type
+ */
+public class ChunkedFileList<T extends Serializable> extends AbstractList<T> implements Serializable
+{
+	private static final int MAX_MAPPED_CHUNKS = 4;
+
+	private static final String DIRECTORY_PREFIX = "appendablerepeater";
+
+	private static final String SESSION_ATTRIBUTE_PREFIX = ChunkedFileList.class.getName() + ":";
+
+	/**
+	 * Used if there is no application to get the file cleaner from.
+	 */
+	private static IFileCleaner fallbackFileCleaner;
+
+	/**
+	 * The leases of all chunk directories in use, see {@link Lease}.
+	 */
+	private static final Map<File, WeakReference<Lease>> LEASES = new HashMap<>();
+
+	/**
+	 * Keeps the chunk directory from being deleted. It is shared by the list and all its copies.
+	 */
+	private final Lease lease;
+
+	private final int chunkSize;
+
+	/**
+	 * The names of the full chunks that have already been written to disk, in order.
+	 */
+	private ArrayList<String> chunkFiles = new ArrayList<>();
+
+	/**
+	 * The elements that have not been written to a chunk file yet.
+	 */
+	private ArrayList<T> tail;
+
+	/**
+	 * Recently read chunk files. Mappings are cheap to recreate, so they are not serialized.
+	 */
+	private transient Map<Integer, ByteBuffer> mappedChunks;
+
+	/**
+	 * Create a list that stores its chunks in a new temporary directory.
+	 *
+	 * @param chunkSize The number of elements per chunk
+	 */
+	public ChunkedFileList(int chunkSize)
+	{
+		this(null, chunkSize);
+	}
+
+	/**
+	 * Create a list that stores its chunks in a new directory inside the given one. The directory should not be
+	 * used for anything else.
+	 *
+	 * @param directory The directory to create the list's directory in, or null for the default temporary
+	 *                  directory. It is created if it does not exist.
+	 * @param chunkSize The number of elements per chunk
+	 */
+	public ChunkedFileList(File directory, int chunkSize)
+	{
+		if (chunkSize < 1)
+		{
+			throw new IllegalArgumentException("chunkSize must be at least 1");
+		}
+		this.chunkSize = chunkSize;
+		this.tail = new ArrayList<>(chunkSize);
+		this.lease = lease(createDirectory(directory));
+		if (Session.exists() && RequestCycle.get() != null)
+		{
+			// stored versions of the page may still need the chunk files after all copies of the list are gone
+			Session.get().setAttribute(SESSION_ATTRIBUTE_PREFIX + lease.directory.getName(), lease);
+		}
+	}
+
+	private static File createDirectory(File parentDirectory)
+	{
+		if (parentDirectory != null && !parentDirectory.isDirectory() && !parentDirectory.mkdirs())
+		{
+			throw new WicketRuntimeException("Cannot create directory " + parentDirectory);
+		}
+		try
+		{
+			return (parentDirectory == null ? Files.createTempDirectory(DIRECTORY_PREFIX) :
+					Files.createTempDirectory(parentDirectory.toPath(), DIRECTORY_PREFIX)).toFile();
+		}
+		catch (IOException e)
+		{
+			throw new WicketRuntimeException("Cannot create directory for list chunks", e);
+		}
+	}
+
+	/**
+	 * @return the lease for the given directory, which is created if there is none yet
+	 */
+	private static synchronized Lease lease(File directory)
+	{
+		final Iterator<WeakReference<Lease>> leases = LEASES.values().iterator();
+		while (leases.hasNext())
+		{
+			if (leases.next().get() == null)
+			{
+				leases.remove();
+			}
+		}
+		final WeakReference<Lease> existing = LEASES.get(directory);
+		Lease lease = existing != null ? existing.get() : null;
+		if (lease == null)
+		{
+			lease = new Lease(directory);
+			getFileCleaner().track(directory, lease, FileDeleteStrategy.FORCE);
+			LEASES.put(directory, new WeakReference<>(lease));
+		}
+		return lease;
+	}
+
+	private static synchronized IFileCleaner getFileCleaner()
+	{
+		final IFileCleaner fileCleaner =
+				Application.exists() ? Application.get().getResourceSettings().getFileCleaner() : null;
+		if (fileCleaner != null)
+		{
+			return fileCleaner;
+		}
+		if (fallbackFileCleaner == null)
+		{
+			fallbackFileCleaner = new FileCleaner();
+		}
+		return fallbackFileCleaner;
+	}
+
+	@Override
+	public T get(int index)
+	{
+		if (index < 0 || index >= size())
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+		final int chunk = index / chunkSize;
+		if (chunk == chunkFiles.size())
+		{
+			return tail.get(index % chunkSize);
+		}
+		return readElement(chunk, index % chunkSize);
+	}
+
+	@Override
+	public int size()
+	{
+		return chunkFiles.size() * chunkSize + tail.size();
+	}
+
+	@Override
+	public void add(int index, T element)
+	{
+		if (index != size())
+		{
+			throw new UnsupportedOperationException("ChunkedFileList can only add elements at the end");
+		}
+		modCount++;
+		tail.add(element);
+		if (tail.size() == chunkSize)
+		{
+			writeChunk();
+		}
+	}
+
+	@Override
+	public T remove(int index)
+	{
+		throw new UnsupportedOperationException("ChunkedFileList is append-only, elements cannot be removed");
+	}
+
+	@Override
+	public void clear()
+	{
+		modCount++;
+		// the chunk files may still be mapped, and copies of this list may still use them. they are deleted with the
+		// directory.
+		mappedChunks = null;
+		chunkFiles = new ArrayList<>();
+		tail = new ArrayList<>(chunkSize);
+	}
+
+	/**
+	 * Chunk file layout: the number of elements n, followed by n + 1 offsets into the data section, followed by the
+	 * data section containing the serialized elements back to back. Each chunk gets a new file, because copies of
+	 * this list share the directory.
+	 */
+	private void writeChunk()
+	{
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		final int[] offsets = new int[tail.size() + 1];
+		File file = null;
+		try
+		{
+			for (int i = 0; i < tail.size(); i++)
+			{
+				offsets[i] = data.size();
+				try (ObjectOutputStream out = new ObjectOutputStream(data))
+				{
+					out.writeObject(tail.get(i));
+				}
+			}
+			offsets[tail.size()] = data.size();
+
+			final ByteBuffer header = ByteBuffer.allocate(4 * (offsets.length + 1));
+			header.putInt(tail.size());
+			for (int offset : offsets)
+			{
+				header.putInt(offset);
+			}
+			header.flip();
+			file = Files.createTempFile(lease.directory.toPath(), "chunk", ".bin").toFile();
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE))
+			{
+				final ByteBuffer[] buffers = {header, ByteBuffer.wrap(data.toByteArray())};
+				while (buffers[1].hasRemaining())
+				{
+					channel.write(buffers);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			throw new WicketRuntimeException("Cannot write chunk file " + (file != null ? file : lease.directory), e);
+		}
+		chunkFiles.add(file.getName());
+		tail = new ArrayList<>(chunkSize);
+	}
+
+	private T readElement(int chunk, int indexInChunk)
+	{
+		final ByteBuffer buffer = mappedChunk(chunk).duplicate();
+		final int count = buffer.getInt(0);
+		final int dataStart = 4 * (count + 2);
+		final int start = buffer.getInt(4 * (indexInChunk + 1));
+		final int end = buffer.getInt(4 * (indexInChunk + 2));
+		final byte[] bytes = new byte[end - start];
+		buffer.position(dataStart + start);
+		buffer.get(bytes);
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes)))
+		{
+			@SuppressWarnings("unchecked")
+			final T element = (T) in.readObject();
+			return element;
+		}
+		catch (IOException | ClassNotFoundException e)
+		{
+			throw new WicketRuntimeException("Cannot read element from chunk file " + chunkFile(chunk), e);
+		}
+	}
+
+	private ByteBuffer mappedChunk(int chunk)
+	{
+		if (mappedChunks == null)
+		{
+			mappedChunks = new LinkedHashMap<Integer, ByteBuffer>(MAX_MAPPED_CHUNKS, 0.75f, true)
+			{
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Integer, ByteBuffer> eldest)
+				{
+					return size() > MAX_MAPPED_CHUNKS;
+				}
+			};
+		}
+		ByteBuffer buffer = mappedChunks.get(chunk);
+		if (buffer == null)
+		{
+			try (FileChannel channel = FileChannel.open(chunkFile(chunk).toPath(), StandardOpenOption.READ))
+			{
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			catch (IOException e)
+			{
+				throw new WicketRuntimeException("Cannot map chunk file " + chunkFile(chunk), e);
+			}
+			mappedChunks.put(chunk, buffer);
+		}
+		return buffer;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		if (!chunkFiles.isEmpty() && !lease.directory.isDirectory())
+		{
+			throw new InvalidObjectException("The chunk files in " + lease.directory + " have already been deleted");
+		}
+	}
+
+	private File chunkFile(int chunk)
+	{
+		return new File(lease.directory, chunkFiles.get(chunk));
+	}
+
+	/**
+	 * The chunk directory is deleted once its lease is garbage collected. The list, all its copies and the session
+	 * it was created in refer to the same lease, even after they are deserialized.
+	 */
+	private static final class Lease implements Serializable
+	{
+		private final File directory;
+
+		private Lease(File directory)
+		{
+			this.directory = directory;
+		}
+
+		private Object readResolve()
+		{
+			return lease(directory);
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import org.apache.wicket.ajax.AbstractDefaultAjaxBehavior;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.attributes.AjaxCallListener;
+import org.apache.wicket.ajax.attributes.IAjaxCallListener;
+
+/**
+ * The callback used by {@link AppendableGridView#setClientPageCacheSize(int)}. When the client shows a page from its
+ * cache, it only tells the server about the new current page via this callback, nothing is rendered.
+ */
+abstract class ClientPageCacheBehavior extends AbstractDefaultAjaxBehavior
+{
+	static final String PARAMETER = "page";
+
+	private final int maxPages;
+
+	ClientPageCacheBehavior(int maxPages)
+	{
+		this.maxPages = maxPages;
+	}
+
+	int getMaxPages()
+	{
+		return maxPages;
+	}
+
+	@Override
+	protected void respond(AjaxRequestTarget target)
+	{
+		final long page = getComponent().getRequest().getRequestParameters()
+				.getParameterValue(PARAMETER).toLong(-1);
+		if (page >= 0)
+		{
+			onPageShown(page);
+		}
+	}
+
+	/**
+	 * The client has shown the given page from its cache.
+	 */
+	protected abstract void onPageShown(long page);
+
+	/**
+	 * @return the JavaScript that registers a full render of the given page with the client cache of the container.
+	 * If the page is not <code>cacheable</code>, the client will not keep it when another page is shown.
+	 */
+	CharSequence getShownScript(String containerMarkupId, long page, boolean cacheable)
+	{
+		return String.format("AppendableListView.PageCache.shown('%s', %d, '%s', %d, %b);", containerMarkupId,
+				page, getCallbackUrl(), maxPages, cacheable);
+	}
+
+	/**
+	 * @return the JavaScript that drops all cached pages of the container starting with the given one
+	 */
+	static CharSequence getInvalidateScript(String containerMarkupId, long fromPage)
+	{
+		return String.format("AppendableListView.PageCache.invalidate('%s', %d);", containerMarkupId, fromPage);
+	}
+
+	/**
+	 * @return a listener that shows the given page from the client cache if possible, and cancels the ajax call in
+	 * that case
+	 */
+	static IAjaxCallListener newPreconditionListener(String containerMarkupId, long page)
+	{
+		return new AjaxCallListener().onPrecondition(String.format(
+				"return !AppendableListView.PageCache.show('%s', %d);", containerMarkupId, page));
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import org.apache.wicket.markup.repeater.data.IDataProvider;
+
+/**
+ * An {@link IDataProvider} that can tell how many items were appended since a known size, without having to count
+ * all of its items. {@link AppendableGridView#itemsAppended(org.apache.wicket.ajax.AjaxRequestTarget)} uses this
+ * instead of {@link #size()} when its provider implements this interface, so that appending does not need a full
+ * count, e.g. a {@code SELECT COUNT(*)} over a large table.
+ *
+ * @param <T> The item type
+ */
+public interface IAppendableDataProvider<T> extends IDataProvider<T>
+{
+	/**
+	 * Count the items that were appended after the first {@code knownSize} items. This is only called for sizes
+	 * that this provider reported before, and should be much cheaper than {@link #size()}, e.g. by comparing against
+	 * a maximum id or a sequence number.
+	 *
+	 * @param knownSize the number of items the caller already knows about
+	 * @return the number of items after the first {@code knownSize} ones, or 0 if there are none
+	 */
+	long countAppendedSince(long knownSize);
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.wicket.model.LoadableDetachableModel;
+
+/**
+ * A list model that only keeps the keys of its elements between requests. The elements themselves are loaded
+ * lazily via {@link #loadElements(List)} when the list is first accessed in a request, and are dropped again when
+ * the model is detached. This keeps the serialized page small even for very long lists, since only the keys end up
+ * in the page store.
+ * <p>
+ * The list returned by {@link #getObject()} can be modified, e.g. by
+ * {@link AppendableListView#appendNewItemFor(Object, org.apache.wicket.ajax.AjaxRequestTarget)} or
+ * {@link AppendableListView#removeItemFor(Object, org.apache.wicket.ajax.AjaxRequestTarget)}. All changes are
+ * reflected in the list of keys.
+ * <p>
+ * Combine this with {@link AppendableListView#setRetainItems(boolean)} to keep the ListItems out of the page store
+ * as well.
+ *
+ * @param <K> The key type
+ * @param <T> The list element type
+ */
+public abstract class KeyedListModel<K, T> extends LoadableDetachableModel<List<T>>
+{
+	private final List<K> keys;
+
+	public KeyedListModel()
+	{
+		this(new ArrayList<>());
+	}
+
+	public KeyedListModel(List<K> keys)
+	{
+		this.keys = new ArrayList<>(keys);
+	}
+
+	/**
+	 * @return The keys of the current list elements, in list order.
+	 */
+	public List<K> getKeys()
+	{
+		return Collections.unmodifiableList(keys);
+	}
+
+	/**
+	 * Determine the key for an element. This is used when elements are added to the list.
+	 *
+	 * @param element The list element
+	 * @return The key identifying that element
+	 */
+	protected abstract K getKey(T element);
+
+	/**
+	 * Load the elements for the given keys. This is called at most once per request, when the list is accessed
+	 * for the first time after the model was detached.
+	 *
+	 * @param keys The keys to load, in list order
+	 * @return The elements, in the same order as the keys
+	 */
+	protected abstract List<T> loadElements(List<K> keys);
+
+	@Override
+	protected final List<T> load()
+	{
+		if (keys.isEmpty())
+		{
+			return new KeyedList(new ArrayList<>());
+		}
+		return new KeyedList(new ArrayList<>(loadElements(getKeys())));
+	}
+
+	@Override
+	public void setObject(List<T> elements)
+	{
+		keys.clear();
+		for (T element : elements)
+		{
+			keys.add(getKey(element));
+		}
+		super.setObject(new KeyedList(new ArrayList<>(elements)));
+	}
+
+	/**
+	 * The list that is handed out by the model. It writes all changes through to the key list.
+	 */
+	private class KeyedList extends AbstractList<T>
+	{
+		private final List<T> elements;
+
+		private KeyedList(List<T> elements)
+		{
+			this.elements = elements;
+		}
+
+		@Override
+		public T get(int index)
+		{
+			return elements.get(index);
+		}
+
+		@Override
+		public int size()
+		{
+			return elements.size();
+		}
+
+		@Override
+		public void add(int index, T element)
+		{
+			keys.add(index, getKey(element));
+			elements.add(index, element);
+		}
+
+		@Override
+		public T set(int index, T element)
+		{
+			keys.set(index, getKey(element));
+			return elements.set(index, element);
+		}
+
+		@Override
+		public T remove(int index)
+		{
+			keys.remove(index);
+			return elements.remove(index);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.wicket.ajax.AbstractDefaultAjaxBehavior;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.util.string.Strings;
+
+/**
+ * The callback used by the appendable repeaters to populate placeholder items once they become visible in the
+ * browser. The client sends the markup ids of all placeholders that were scrolled into view in one request.
+ */
+abstract class LazyHydrationBehavior extends AbstractDefaultAjaxBehavior
+{
+	static final String PARAMETER = "ids";
+
+	@Override
+	protected void respond(AjaxRequestTarget target)
+	{
+		final String ids = getComponent().getRequest().getRequestParameters()
+				.getParameterValue(PARAMETER).toString("");
+		final Set<String> markupIds = new HashSet<>(Arrays.asList(Strings.split(ids, ',')));
+		markupIds.remove("");
+		if (!markupIds.isEmpty())
+		{
+			hydrate(markupIds, target);
+		}
+	}
+
+	/**
+	 * Populate and render the placeholder items with the given markup ids. Ids that do not belong to a placeholder
+	 * (anymore) must be ignored.
+	 */
+	protected abstract void hydrate(Set<String> markupIds, AjaxRequestTarget ajax);
+
+	/**
+	 * @return the JavaScript that tells the client to request hydration of the given placeholders once they are
+	 * visible
+	 */
+	CharSequence getObserveScript(Collection<String> markupIds)
+	{
+		final StringBuilder ids = new StringBuilder();
+		for (String markupId : markupIds)
+		{
+			if (ids.length() > 0)
+			{
+				ids.append(", ");
+			}
+			ids.append('\'').append(markupId).append('\'');
+		}
+		return String.format("AppendableListView.hydrateWhenVisible('%s', [%s]);", getCallbackUrl(), ids);
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import org.apache.wicket.ajax.AbstractDefaultAjaxBehavior;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+
+/**
+ * The callback used by {@link AppendableGridView#setContinuous(boolean)}. The client calls it when the last row
+ * scrolls into view.
+ */
+abstract class LoadMoreBehavior extends AbstractDefaultAjaxBehavior
+{
+	@Override
+	protected void respond(AjaxRequestTarget target)
+	{
+		loadMore(target);
+	}
+
+	/**
+	 * Render the next items after the last rendered one.
+	 */
+	protected abstract void loadMore(AjaxRequestTarget ajax);
+
+	/**
+	 * @return the JavaScript that tells the client to call back once the element with the given markup id is visible
+	 */
+	CharSequence getObserveScript(String markupId)
+	{
+		return String.format("AppendableListView.loadWhenVisible('%s', '%s');", getCallbackUrl(), markupId);
+	}
+}
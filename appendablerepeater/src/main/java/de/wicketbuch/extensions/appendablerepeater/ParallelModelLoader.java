@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import org.apache.wicket.model.IModel;
+
+/**
+ * Loads the objects of a batch of models at the same time, so that appending many items with lazily loading models
+ * takes about as long as the slowest of them instead of all of them together.
+ */
+final class ParallelModelLoader
+{
+	private ParallelModelLoader()
+	{
+	}
+
+	/**
+	 * Call {@link IModel#getObject()} on each of the given models on the given executor and wait until all of them
+	 * are done. An exception thrown by one of the models is rethrown here. Does nothing if the executor is null.
+	 */
+	static void load(List<? extends IModel<?>> models, Executor executor)
+	{
+		if (executor == null || models.size() < 2)
+		{
+			// nothing to gain, the request thread can just as well load it when rendering
+			return;
+		}
+		final CompletableFuture<?>[] loads = new CompletableFuture<?>[models.size()];
+		for (int i = 0; i < loads.length; i++)
+		{
+			loads[i] = CompletableFuture.runAsync(models.get(i)::getObject, executor);
+		}
+		try
+		{
+			CompletableFuture.allOf(loads).join();
+		}
+		catch (CompletionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import static de.wicketbuch.extensions.appendablerepeater.AppendableListView.SCRIPT;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.ajax.AbstractDefaultAjaxBehavior;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.markup.MarkupStream;
+import org.apache.wicket.markup.head.IHeaderResponse;
+import org.apache.wicket.markup.head.JavaScriptHeaderItem;
+import org.apache.wicket.markup.head.OnDomReadyHeaderItem;
+import org.apache.wicket.markup.repeater.AbstractRepeater;
+import org.apache.wicket.markup.repeater.Item;
+import org.apache.wicket.markup.repeater.data.IDataProvider;
+import org.apache.wicket.model.IModel;
+
+/**
+ * A variant of {@link AppendableListView} for stateless pages. {@link AppendableListView} has to remember its
+ * last rendered item to append after it, which makes the page stateful, so each append stores a new page version.
+ * This repeater keeps no state between requests: the client remembers how many items are rendered and sends this
+ * offset with each request for more items. The page is then recreated from its page parameters as usual for a
+ * stateless page, and only the next batch of items is read from the {@link IDataProvider} and rendered via AJAX.
+ * Nothing is stored in the page store or the session.
+ * <p>
+ * A full render shows the first batch of items. To load the next one, call the {@link #getLoadMoreScript() load more
+ * script} on the client, e.g. from the <code>onclick</code> attribute of a button (an {@code AjaxLink} would make the
+ * page stateful again). It does nothing while a request is running or once all items are rendered. Override {@link
+ * #onAppendItem(Item, AjaxRequestTarget)} to animate the new items.
+ * <p>
+ * The items are read by their offset, so this assumes that the data provider only ever appends items, like the
+ * other appendable repeaters. Their markup ids are derived from their offset, so they are the same in every
+ * request. If the list is empty, new items are appended at the end of its parent.
+ *
+ * @param <T> The list element type
+ */
+public abstract class StatelessAppendableListView<T> extends AbstractRepeater
+{
+	/**
+	 * The name of the request parameter the client sends the offset of the next item in.
+	 */
+	public static final String OFFSET = "offset";
+
+	private final IDataProvider<T> dataProvider;
+
+	private final int batchSize;
+
+	private final AppendBehavior appendBehavior = new AppendBehavior();
+
+	/**
+	 * The tag used for the items. This is lazily determined and then cached.
+	 */
+	private String itemTagName;
+
+	/**
+	 * The offset of the item after the last rendered one. Only used during a full render, it is sent to the client
+	 * instead of being kept.
+	 */
+	private long nextOffset;
+
+	/**
+	 * The size of the data provider, counted once per request by {@link #addItems(long)}.
+	 */
+	private long itemCount;
+
+	/**
+	 * @param id           component id
+	 * @param dataProvider the provider for the items
+	 * @param batchSize    the number of items to render on a full render and for each request for more
+	 */
+	public StatelessAppendableListView(String id, IDataProvider<T> dataProvider, int batchSize)
+	{
+		super(id);
+		if (batchSize < 1)
+		{
+			throw new IllegalArgumentException("batchSize must be at least 1");
+		}
+		this.dataProvider = dataProvider;
+		this.batchSize = batchSize;
+		add(appendBehavior);
+	}
+
+	public IDataProvider<T> getDataProvider()
+	{
+		return dataProvider;
+	}
+
+	public int getBatchSize()
+	{
+		return batchSize;
+	}
+
+	@Override
+	protected void onInitialize()
+	{
+		super.onInitialize();
+		// new items are appended to the parent if the list is empty, so it needs a markup id
+		getParent().setOutputMarkupId(true);
+	}
+
+	@Override
+	protected void onPopulate()
+	{
+		// this is a full render, so the first batch is rendered from scratch
+		removeAll();
+		nextOffset = 0;
+		addItems(0);
+	}
+
+	/**
+	 * Create and populate the items of the batch starting at <code>offset</code>.
+	 */
+	private List<Item<T>> addItems(long offset)
+	{
+		final List<Item<T>> newItems = new ArrayList<>();
+		nextOffset = offset;
+		itemCount = dataProvider.size();
+		if (offset >= itemCount)
+		{
+			return newItems;
+		}
+		final Iterator<? extends T> elements = dataProvider.iterator(offset, Math.min(batchSize, itemCount - offset));
+		while (elements.hasNext())
+		{
+			final Item<T> item = newItem(String.valueOf(nextOffset), (int) Math.min(nextOffset, Integer.MAX_VALUE),
+					dataProvider.model(elements.next()));
+			item.setOutputMarkupId(true);
+			item.setMarkupId(getItemMarkupId(nextOffset));
+			populateItem(item);
+			add(item);
+			newItems.add(item);
+			nextOffset++;
+		}
+		return newItems;
+	}
+
+	@Override
+	protected Iterator<? extends Component> renderIterator()
+	{
+		return iterator();
+	}
+
+	/**
+	 * Create a new item. You won't normally need to override this.
+	 *
+	 * @param id    the item's component id
+	 * @param index the item's offset in the data provider
+	 * @param model the element's model
+	 */
+	protected Item<T> newItem(String id, int index, IModel<T> model)
+	{
+		return new Item<>(id, index, model);
+	}
+
+	protected abstract void populateItem(Item<T> item);
+
+	/**
+	 * Called for each item that was appended via AJAX, e.g. to animate it.
+	 *
+	 * @param newItem the new item
+	 * @param ajax    the currently active {@link AjaxRequestTarget}
+	 */
+	protected void onAppendItem(Item<T> newItem, AjaxRequestTarget ajax)
+	{
+
+	}
+
+	/**
+	 * @return the JavaScript that loads the next batch of items
+	 */
+	public CharSequence getLoadMoreScript()
+	{
+		return String.format("AppendableListView.loadMoreStateless('%s');", getListKey());
+	}
+
+	/**
+	 * Identifies this list on the client. Unlike a generated markup id this is the same in every request. The path
+	 * is escaped so that different paths always give different keys: ':' becomes "__", '_' becomes "_u" and any
+	 * other non-word character "_x" and its four digit hex code.
+	 */
+	private String getListKey()
+	{
+		final String path = getPageRelativePath();
+		final StringBuilder key = new StringBuilder(path.length() + 8);
+		for (int i = 0; i < path.length(); i++)
+		{
+			final char c = path.charAt(i);
+			if (c == ':')
+			{
+				key.append("__");
+			}
+			else if (c == '_')
+			{
+				key.append("_u");
+			}
+			else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))
+			{
+				key.append(c);
+			}
+			else
+			{
+				key.append(String.format("_x%04x", (int) c));
+			}
+		}
+		return key.toString();
+	}
+
+	private String getItemMarkupId(long offset)
+	{
+		return getListKey() + "_" + offset;
+	}
+
+	@Override
+	public void renderHead(IHeaderResponse response)
+	{
+		super.renderHead(response);
+		response.render(JavaScriptHeaderItem.forReference(SCRIPT));
+		final String lastMarkupId = nextOffset > 0 ? "'" + getItemMarkupId(nextOffset - 1) + "'" : "null";
+		response.render(OnDomReadyHeaderItem.forScript(String.format(
+				"AppendableListView.initStateless('%s', '%s', '%s', %s, %d, %b);", getListKey(),
+				appendBehavior.getCallbackUrl(), getParent().getMarkupId(), lastMarkupId, nextOffset,
+				nextOffset < itemCount)));
+	}
+
+	@Override
+	protected void onDetach()
+	{
+		dataProvider.detach();
+		super.onDetach();
+	}
+
+	/**
+	 * Render the batch starting at <code>offset</code> via AJAX and tell the client where to continue.
+	 */
+	private void appendItems(long offset, AjaxRequestTarget ajax)
+	{
+		final List<Item<T>> newItems = addItems(offset);
+		if (!newItems.isEmpty())
+		{
+			if (itemTagName == null)
+			{
+				itemTagName = new MarkupStream(newItems.get(0).getMarkup()).getTag().getName();
+			}
+			// all new items are inserted in one go, so the browser only has to do this once
+			final StringBuilder newIds = new StringBuilder();
+			for (Item<T> newItem : newItems)
+			{
+				if (newIds.length() > 0)
+				{
+					newIds.append(", ");
+				}
+				newIds.append('\'').append(newItem.getMarkupId()).append('\'');
+			}
+			ajax.prependJavaScript(String.format("AppendableListView.appendStateless('%s', [%s], '%s');",
+					getListKey(), newIds, itemTagName));
+			for (Item<T> newItem : newItems)
+			{
+				ajax.add(newItem);
+				onAppendItem(newItem, ajax);
+			}
+		}
+		ajax.appendJavaScript(String.format("AppendableListView.statelessLoaded('%s', %d, %b);", getListKey(),
+				nextOffset, nextOffset < itemCount));
+	}
+
+	/**
+	 * The callback the client sends the offset of the next item to. It is stateless, so it does not need a stored
+	 * page.
+	 */
+	private class AppendBehavior extends AbstractDefaultAjaxBehavior
+	{
+		@Override
+		protected void respond(AjaxRequestTarget target)
+		{
+			final long offset =
+					getComponent().getRequest().getRequestParameters().getParameterValue(OFFSET).toLong(-1);
+			if (offset >= 0)
+			{
+				appendItems(offset, target);
+			}
+		}
+
+		@Override
+		public boolean getStatelessHint(Component component)
+		{
+			return true;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import java.util.function.Consumer;
+
+import com.github.openjson.JSONObject;
+import org.apache.wicket.behavior.AbstractAjaxBehavior;
+import org.apache.wicket.request.IRequestParameters;
+import org.apache.wicket.request.http.WebResponse;
+
+/**
+ * The endpoint used by {@link AppendableListView#streamNewItemsFor(java.util.Collection, org.apache.wicket.ajax.AjaxRequestTarget)}.
+ * The client fetches it outside of wicket-ajax and reads the response progressively. The items are rendered in
+ * chunks, and each chunk is written and flushed as one line of JSON as soon as it is rendered, so the browser can
+ * insert it while the next one is rendered.
+ */
+abstract class StreamBehavior extends AbstractAjaxBehavior
+{
+	static final String FROM = "from";
+
+	static final String TO = "to";
+
+	@Override
+	public void onRequest()
+	{
+		final IRequestParameters parameters = getComponent().getRequest().getRequestParameters();
+		final int from = parameters.getParameterValue(FROM).toInt(-1);
+		final int to = parameters.getParameterValue(TO).toInt(-1);
+		final WebResponse response = (WebResponse) getComponent().getResponse();
+		response.setContentType("application/x-ndjson; charset=" +
+				getComponent().getApplication().getRequestCycleSettings().getResponseRequestEncoding());
+		response.disableCaching();
+		renderChunks(from, to, html -> {
+			response.write(toJsonLine(html));
+			response.flush();
+		});
+	}
+
+	/**
+	 * The response consists of the chunks only. The stream is fetched without the wicket-ajax header, so without
+	 * this the page would be rendered after them.
+	 */
+	@Override
+	public boolean rendersPage()
+	{
+		return false;
+	}
+
+	/**
+	 * Render the items with the given indexes, passing the markup of each chunk of them to the given consumer as soon
+	 * as it is rendered. Invalid ranges must be ignored.
+	 */
+	protected abstract void renderChunks(int from, int to, Consumer<CharSequence> chunks);
+
+	/**
+	 * @return the JavaScript that tells the client to fetch the items with the given indexes and insert them after
+	 * the element with the given markup id
+	 */
+	CharSequence getStreamScript(int from, int to, String existingMarkupId)
+	{
+		return String.format("AppendableListView.stream('%s&%s=%d&%s=%d', '%s')", getCallbackUrl(), FROM, from, TO,
+				to, existingMarkupId);
+	}
+
+	static CharSequence toJsonLine(CharSequence html)
+	{
+		// quote() leaves the line and paragraph separators as they are, older script engines reject them in strings
+		String quoted = JSONObject.quote(html.toString()).replace("\u2028", "\\u2028").replace("\u2029", "\\u2029");
+		return "{\"html\":" + quoted + "}\n";
+	}
+}
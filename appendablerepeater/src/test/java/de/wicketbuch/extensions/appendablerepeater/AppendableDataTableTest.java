@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.markup.html.AjaxLink;
+import org.apache.wicket.extensions.markup.html.repeater.data.grid.ICellPopulator;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.AbstractColumn;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.HeadersToolbar;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.IColumn;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.markup.repeater.Item;
+import org.apache.wicket.markup.repeater.data.ListDataProvider;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.Test;
+
+public class AppendableDataTableTest
+{
+	private final List<String> appendedRows = new ArrayList<>();
+	private boolean pageChangeCalled = false;
+
+	@Test
+	public void renders() throws Exception
+	{
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage(3));
+		tester.assertContains("Number.*test_0.*test_1.*test_2");
+	}
+
+	@Test
+	public void appendsRowsAfterLastRow() throws Exception
+	{
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage(2));
+		final String lastRow = tester.getComponentFromLastRenderedPage(
+				"underTest:body:rows:2").getMarkupId();
+		tester.clickLink("append3", true);
+		tester.assertComponentOnAjaxResponse("underTest:body:rows:3");
+		tester.assertComponentOnAjaxResponse("underTest:body:rows:5");
+		final String lastResponse = tester.getLastResponseAsString();
+		assertTrue(lastResponse.contains(
+				"AppendableListView.appendAllAfter('" + lastRow + "'"));
+		assertTrue(lastResponse.contains("'tr');"));
+		assertTrue(lastResponse.contains("test_2"));
+		assertTrue(lastResponse.contains("test_4"));
+		assertFalse("should not repaint the headers",
+				lastResponse.contains("Number"));
+		assertFalse("should not repaint existing rows",
+				lastResponse.contains("test_1"));
+		assertEquals(3, appendedRows.size());
+		assertFalse(pageChangeCalled);
+	}
+
+	@Test
+	public void appendsMoreRowsAfterAppendedRows() throws Exception
+	{
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage(1));
+		tester.clickLink("append", true);
+		final String lastRow = tester.getComponentFromLastRenderedPage(
+				"underTest:body:rows:2").getMarkupId();
+		tester.clickLink("append", true);
+		assertTrue(tester.getLastResponseAsString().contains(
+				"AppendableListView.appendAllAfter('" + lastRow + "'"));
+		tester.assertContains("test_2");
+	}
+
+	@Test
+	public void goesToNextPageWhenPageIsFull() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage(6);
+		tester.startPage(page);
+		tester.clickLink("append", true);
+		assertEquals(1, page.underTest.getCurrentPage());
+		tester.assertComponentOnAjaxResponse(page.underTest);
+		tester.assertContains("Number.*test_6");
+		assertTrue(pageChangeCalled);
+		assertTrue(appendedRows.isEmpty());
+	}
+
+	@Test
+	public void reportsOverflowToNextPage() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage(4);
+		tester.startPage(page);
+		tester.clickLink("append3", true);
+		assertEquals(0, page.underTest.getCurrentPage());
+		assertEquals(2, page.underTest.getPageCount());
+		assertEquals(2, appendedRows.size());
+		assertTrue(pageChangeCalled);
+	}
+
+	@Test
+	public void repaintsEmptyTable() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage(0);
+		tester.startPage(page);
+		tester.clickLink("append", true);
+		tester.assertComponentOnAjaxResponse(page.underTest);
+		tester.assertContains("test_0");
+	}
+
+	private WicketTester newTester()
+	{
+		final WicketTester tester = new WicketTester();
+		tester.getApplication().getDebugSettings()
+		      .setComponentPathAttributeName("path");
+		return tester;
+	}
+
+	public class TestPage extends WebPage
+	{
+		final AppendableDataTable<Integer, String> underTest;
+		private int counter = 0;
+
+		public TestPage(int initial)
+		{
+			final List<Integer> list = new ArrayList<>();
+			for (int i = 0; i < initial; i++)
+			{
+				list.add(counter++);
+			}
+			final List<IColumn<Integer, String>> columns =
+					Collections.singletonList(
+							new AbstractColumn<Integer, String>(
+									Model.of("Number"))
+							{
+								@Override
+								public void populateItem(
+										Item<ICellPopulator<Integer>> cell,
+										String componentId,
+										IModel<Integer> rowModel)
+								{
+									cell.add(new Label(componentId,
+											"test_" + rowModel.getObject()));
+								}
+							});
+			underTest = new AppendableDataTable<Integer, String>("underTest",
+					columns, new ListDataProvider<>(list), 6)
+			{
+				@Override
+				protected void onAppendRow(Item<Integer> row,
+				                           AjaxRequestTarget ajax)
+				{
+					appendedRows.add("" + row.getModelObject());
+				}
+
+				@Override
+				protected void onPageChangeAfterAppend(AjaxRequestTarget ajax)
+				{
+					pageChangeCalled = true;
+				}
+			};
+			underTest.addTopToolbar(new HeadersToolbar<>(underTest, null));
+			add(underTest);
+			add(new AjaxLink<Void>("append")
+			{
+				@Override
+				public void onClick(AjaxRequestTarget ajax)
+				{
+					list.add(counter++);
+					underTest.itemsAppended(ajax);
+				}
+			});
+			add(new AjaxLink<Void>("append3")
+			{
+				@Override
+				public void onClick(AjaxRequestTarget ajax)
+				{
+					list.add(counter++);
+					list.add(counter++);
+					list.add(counter++);
+					underTest.itemsAppended(ajax);
+				}
+			});
+		}
+	}
+}
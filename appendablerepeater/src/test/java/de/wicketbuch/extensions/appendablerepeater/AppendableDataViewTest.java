@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.markup.html.AjaxLink;
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.markup.repeater.Item;
+import org.apache.wicket.markup.repeater.data.ListDataProvider;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.Test;
+
+public class AppendableDataViewTest
+{
+	private final List<String> appendedItems = new ArrayList<>();
+	private boolean pageChangeCalled = false;
+	private long pendingItemCount = 0;
+
+	@Test
+	public void renders() throws Exception
+	{
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage(3));
+		tester.assertContains("test_0.*test_1.*test_2");
+	}
+
+	@Test
+	public void appendsAfterLastItem() throws Exception
+	{
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage(2));
+		final String lastItem = tester.getComponentFromLastRenderedPage(
+				"container:underTest:2").getMarkupId();
+		tester.clickLink("append3", true);
+		tester.assertComponentOnAjaxResponse("container:underTest:3");
+		tester.assertComponentOnAjaxResponse("container:underTest:5");
+		final String lastResponse = tester.getLastResponseAsString();
+		assertTrue("should insert all new items after the last one",
+				lastResponse.contains("AppendableListView.appendAllAfter('" +
+						lastItem + "', ['"));
+		assertFalse("should not repaint the container",
+				lastResponse.contains("\"container\""));
+		assertFalse("should not contain old items",
+				lastResponse.contains("test_1"));
+		tester.assertContains("test_2.*test_3.*test_4");
+		tester.assertContains("index_2.*index_3.*index_4");
+		assertEquals(3, appendedItems.size());
+		assertFalse("should stay on the page", pageChangeCalled);
+	}
+
+	@Test
+	public void repaintsCompletelyForFirstItem() throws Exception
+	{
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage(0));
+		tester.clickLink("append3", true);
+		tester.assertComponentOnAjaxResponse("container");
+		tester.assertContains("test_0.*test_1.*test_2");
+	}
+
+	@Test
+	public void signalsOverflowToNextPage() throws Exception
+	{
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage(5));
+		tester.clickLink("append3", true);
+		tester.assertContains("test_5");
+		tester.assertContainsNot("test_6");
+		assertTrue("should call onPageChangeAfterAppend", pageChangeCalled);
+	}
+
+	@Test
+	public void jumpsToNewPageAsNeeded() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage(7);
+		tester.startPage(page);
+		tester.clickLink("append3", true);
+		tester.assertComponentOnAjaxResponse("container");
+		tester.assertContains("test_6.*test_7.*test_8.*test_9");
+		tester.assertContains("index_6");
+		tester.assertContainsNot("test_2");
+		assertEquals("should be on second page (index 1) now", 1,
+				page.underTest.getCurrentPage());
+	}
+
+	@Test
+	public void staysOnPageAndReportsPendingItems() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage(7);
+		page.underTest.setStayOnPage(true);
+		tester.startPage(page);
+		tester.clickLink("append3", true);
+		tester.assertContainsNot("test_7");
+		assertFalse("should not repaint the container", tester
+				.getLastResponseAsString().contains("\"container\""));
+		assertEquals(0, page.underTest.getCurrentPage());
+		assertEquals(3, pendingItemCount);
+	}
+
+	private WicketTester newTester()
+	{
+		final WicketTester tester = new WicketTester();
+		tester.getApplication().getDebugSettings()
+		      .setComponentPathAttributeName("path");
+		return tester;
+	}
+
+	public class TestPage extends WebPage
+	{
+		final AppendableDataView<Integer> underTest;
+		private int counter = 0;
+
+		public TestPage(int initial)
+		{
+			final List<Integer> list = new ArrayList<>();
+			for (int i = 0; i < initial; i++)
+			{
+				list.add(counter++);
+			}
+			final WebMarkupContainer container =
+					new WebMarkupContainer("container");
+			add(container);
+			underTest = new AppendableDataView<Integer>("underTest",
+					new ListDataProvider<>(list), 6)
+			{
+				@Override
+				protected void populateItem(Item<Integer> item)
+				{
+					item.add(new Label("label",
+							"test_" + item.getModelObject()));
+					item.add(new Label("index", "index_" + item.getIndex()));
+				}
+
+				@Override
+				protected void onAppendItem(Item<Integer> item,
+				                            AjaxRequestTarget ajax)
+				{
+					appendedItems.add("" + item.getModelObject());
+				}
+
+				@Override
+				protected void onPageChangeAfterAppend(AjaxRequestTarget ajax)
+				{
+					pageChangeCalled = true;
+				}
+
+				@Override
+				protected void onItemsPendingAfterAppend(long pendingCount,
+				                                         AjaxRequestTarget ajax)
+				{
+					pendingItemCount = pendingCount;
+				}
+			};
+			container.add(underTest);
+			add(new AjaxLink<Void>("append3")
+			{
+				@Override
+				public void onClick(AjaxRequestTarget ajax)
+				{
+					list.add(counter++);
+					list.add(counter++);
+					list.add(counter++);
+					underTest.itemsAppended(ajax);
+				}
+			});
+		}
+	}
+}
@@ -26,7 +26,11 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
+import org.apache.wicket.Component;
+import org.apache.wicket.MarkupContainer;
+import org.apache.wicket.ajax.AjaxEventBehavior;
 import org.apache.wicket.ajax.AjaxRequestTarget;
 import org.apache.wicket.ajax.markup.html.AjaxLink;
 import org.apache.wicket.markup.html.WebMarkupContainer;
@@ -34,12 +38,15 @@ import org.apache.wicket.markup.html.WebPage;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.link.Link;
 import org.apache.wicket.markup.html.navigation.paging.PagingNavigator;
+import org.apache.wicket.markup.repeater.IItemFactory;
+import org.apache.wicket.markup.repeater.IItemReuseStrategy;
 import org.apache.wicket.markup.repeater.Item;
 import org.apache.wicket.markup.repeater.ReuseIfModelsEqualStrategy;
 import org.apache.wicket.markup.repeater.data.IDataProvider;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.Model;
 import org.apache.wicket.util.tester.WicketTester;
+import org.apache.wicket.util.visit.IVisit;
 import org.junit.Test;
 
 public class AppendableGridViewTest
@@ -47,6 +54,13 @@ public class AppendableGridViewTest
 	private Set<String> appendedRows = new HashSet<>();
 	private Set<String> appendedItems = new HashSet<>();
 	private boolean pageChangeCalled = false;
+	private int sizeCalls = 0;
+	private int iteratorCalls = 0;
+	private long pendingItemCount = 0;
+	private final List<Runnable> prefetchTasks = new ArrayList<>();
+	private Executor prefetchExecutor;
+	private Executor modelLoadingExecutor;
+	private int modelLoadingTasks = 0;
 
 	@Test
 	public void renders() throws Exception
@@ -83,6 +97,34 @@ public class AppendableGridViewTest
 		tester.assertContains("test_0");
 	}
 
+	@Test
+	public void repaintsRowWhenMostCellsAreFilled() throws Exception
+	{
+		WicketTester tester = newTester();
+		tester.startPage(new TestPage(1));
+		tester.clickLink("append3", true);
+		// two of three cells in the first row change, so the row is
+		// repainted instead of both cells
+		tester.assertComponentOnAjaxResponse("container:underTest:1");
+		tester.assertContains("test_1.*test_2");
+		assertTrue("onAppendItem should still be called for each new item",
+				appendedItems.containsAll(Arrays.asList("1", "2")));
+	}
+
+	@Test
+	public void replacesCellsBelowRowRepaintThreshold() throws Exception
+	{
+		WicketTester tester = newTester();
+		final TestPage page = new TestPage(1);
+		page.underTest.setRowRepaintThreshold(1);
+		tester.startPage(page);
+		tester.clickLink("append3", true);
+		tester.assertComponentOnAjaxResponse("container:underTest:1:cols:3");
+		tester.assertComponentOnAjaxResponse("container:underTest:1:cols:4");
+		assertFalse("ajax response should not contain old items",
+				tester.getLastResponseAsString().contains("test_0"));
+	}
+
 	@Test
 	public void appendsInNewRow() throws Exception
 	{
@@ -200,6 +242,41 @@ public class AppendableGridViewTest
 				.getCurrentPage());
 	}
 
+	@Test
+	public void staysOnPageAndReportsPendingItems() throws Exception
+	{
+		WicketTester tester = newTester();
+		final TestPage page = new TestPage(7);
+		page.underTest.setStayOnPage(true);
+		tester.startPage(page);
+		tester.clickLink("append3", true);
+		assertFalse("should not repaint the grid", tester
+				.getLastResponseAsString().contains("\"container\""));
+		tester.assertContainsNot("test_7");
+		assertEquals("should stay on first page", 0,
+				page.underTest.getCurrentPage());
+		assertEquals(3, pendingItemCount);
+		tester.clickLink("append", true);
+		assertEquals("pending count should add up", 4, pendingItemCount);
+		// navigating renders the new items and resets the count
+		tester.clickLink("container:pager:next", true);
+		tester.assertContains("test_6.*test_7.*test_10");
+		assertEquals(0, page.underTest.getPendingItemCount());
+	}
+
+	@Test
+	public void reportsOverflowAsPendingWhenStayingOnPage() throws Exception
+	{
+		WicketTester tester = newTester();
+		final TestPage page = new TestPage(5);
+		page.underTest.setStayOnPage(true);
+		tester.startPage(page);
+		tester.clickLink("append3", true);
+		tester.assertContains("test_5");
+		assertEquals("two items should overflow to the next page", 2,
+				pendingItemCount);
+	}
+
 	@Test
 	public void itemIndexContinuesCorrectly() throws Exception
 	{
@@ -235,6 +312,445 @@ public class AppendableGridViewTest
 				("index_3.*index_4.*index_5");
 	}
 
+	@Test
+	public void doesNotUseRegularReuseStrategyWhenAppendingRows() throws
+			Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage(3);
+		final List<Boolean> reuseStrategyCalls = new ArrayList<>();
+		page.underTest.setItemReuseStrategy(new IItemReuseStrategy()
+		{
+			@Override
+			public <T> Iterator<Item<T>> getItems(IItemFactory<T> factory,
+			                                      Iterator<IModel<T>> newModels,
+			                                      Iterator<Item<T>> existingItems)
+			{
+				reuseStrategyCalls.add(true);
+				return ReuseIfModelsEqualStrategy.getInstance()
+						.getItems(factory, newModels, existingItems);
+			}
+		});
+		tester.startPage(page);
+		reuseStrategyCalls.clear();
+		tester.clickLink("append", true);
+		assertTrue(reuseStrategyCalls.isEmpty());
+		tester.assertContains("index_3");
+	}
+
+	@Test
+	public void keepsIndexBeyondIntegerRange() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage_Huge(2);
+		tester.startPage(page);
+		tester.assertContains("test_0.*test_1");
+		tester.clickLink("append", true);
+		tester.assertContains("test_2");
+		final List<Long> itemIndexes = new ArrayList<>();
+		page.underTest.visitChildren(AppendableGridView.AppendableItem.class,
+				(AppendableGridView<Integer>.AppendableItem item,
+				 IVisit<Void> visit) ->
+				{
+					if (item.getModel() != null)
+					{
+						itemIndexes.add(item.getItemIndex());
+					}
+				});
+		assertEquals(Arrays.asList(HugeDataProvider.OFFSET,
+				HugeDataProvider.OFFSET + 1, HugeDataProvider.OFFSET + 2),
+				itemIndexes);
+	}
+
+	@Test
+	public void hydratesPlaceholdersWhenRequested() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage(2);
+		page.underTest.setLazyHydration(true);
+		tester.startPage(page);
+		tester.clickLink("append3", true);
+		tester.assertContainsNot("test_2");
+		tester.assertContainsNot("test_4");
+		tester.assertContains("hydrateWhenVisible");
+		final Component placeholderInOldRow = tester
+				.getComponentFromLastRenderedPage("container:underTest:1:cols:4");
+		final Component placeholderInNewRow = tester
+				.getComponentFromLastRenderedPage("container:underTest:5:cols:7");
+		tester.getRequest().setParameter(LazyHydrationBehavior.PARAMETER,
+				placeholderInOldRow.getMarkupId() + "," +
+						placeholderInNewRow.getMarkupId());
+		tester.executeBehavior(page.underTest
+				.getBehaviors(LazyHydrationBehavior.class).get(0));
+		tester.assertComponentOnAjaxResponse(placeholderInOldRow);
+		tester.assertComponentOnAjaxResponse(placeholderInNewRow);
+		tester.assertContains("test_2");
+		tester.assertContains("test_4");
+		tester.assertContainsNot("test_3");
+	}
+
+	@Test
+	public void observesPlaceholdersAgainWhenTheirRowIsRepainted()
+			throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage(1);
+		page.underTest.setLazyHydration(true);
+		page.underTest.setRowRepaintThreshold(0);
+		tester.startPage(page);
+		tester.clickLink("append", true);
+		final Component placeholder = tester
+				.getComponentFromLastRenderedPage("container:underTest:1:cols:3");
+		tester.clickLink("append", true);
+		// the row is replaced in the browser, and with it the element that
+		// was observed for the old placeholder
+		tester.assertComponentOnAjaxResponse("container:underTest:1");
+		tester.assertContains("hydrateWhenVisible\\('[^']*', \\['"
+				+ placeholder.getMarkupId() + "'\\]\\)");
+	}
+
+	@Test
+	public void appendsWithoutFullCountForAppendableProvider() throws Exception
+	{
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage_AppendableProvider(2));
+		sizeCalls = 0;
+		tester.clickLink("append3", true);
+		tester.assertContains("test_2.*test_3.*test_4");
+		assertEquals("should not count all items when appending", 0,
+				sizeCalls);
+	}
+
+	@Test
+	public void fetchesAppendedRangeOnce() throws Exception
+	{
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage_AppendableProvider(2));
+		iteratorCalls = 0;
+		// fills the last cell of the first row and starts a new row
+		tester.clickLink("append3", true);
+		tester.assertContains("test_2.*test_3.*test_4");
+		assertEquals("should query the provider only once", 1,
+				iteratorCalls);
+	}
+
+	@Test
+	public void jumpsToNewPageWithKnownItemCount() throws Exception
+	{
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage_AppendableProvider(7));
+		sizeCalls = 0;
+		tester.clickLink("append3", true);
+		tester.assertComponentOnAjaxResponse("container");
+		tester.assertContains("test_6.*test_7.*test_8.*test_9");
+		assertEquals("should not count all items when jumping pages", 0,
+				sizeCalls);
+	}
+
+	@Test
+	public void insertsNewRowsWithOneScript() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage(3);
+		page.underTest.setRows(3);
+		tester.startPage(page);
+		tester.clickLink("append6", true);
+		tester.assertComponentOnAjaxResponse("container:underTest:5");
+		tester.assertComponentOnAjaxResponse("container:underTest:9");
+		final String lastResponse = tester.getLastResponseAsString();
+		assertTrue("should insert both rows at once", lastResponse.contains(
+				"AppendableListView.appendAllAfter('" +
+						tester.getComponentFromLastRenderedPage(
+								"container:underTest:1").getMarkupId() +
+						"', ['" +
+						tester.getComponentFromLastRenderedPage(
+								"container:underTest:5").getMarkupId() +
+						"', '" +
+						tester.getComponentFromLastRenderedPage(
+								"container:underTest:9").getMarkupId() +
+						"'], 'tr');"));
+		assertEquals("should call onAppendRow for both rows", 2,
+				appendedRows.size());
+	}
+
+	@Test
+	public void reflowsCellsAfterRemoval() throws Exception
+	{
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage(5));
+		tester.clickLink("remove", true);
+		// 1 is the first row with cells 2-4, 5 is the second row with cells
+		// 6-8. everything from the removed item on moves up one cell.
+		tester.assertComponentOnAjaxResponse("container:underTest:1:cols:3");
+		tester.assertComponentOnAjaxResponse("container:underTest:1:cols:4");
+		tester.assertComponentOnAjaxResponse("container:underTest:5:cols:6");
+		tester.assertComponentOnAjaxResponse("container:underTest:5:cols:7");
+		final String lastResponse = tester.getLastResponseAsString();
+		assertFalse("should not repaint the whole grid",
+				lastResponse.contains("\"container\""));
+		assertFalse("should not contain items before the removed one",
+				lastResponse.contains("test_0"));
+		assertTrue("should contain moved items",
+				lastResponse.contains("test_2") &&
+						lastResponse.contains("test_3") &&
+						lastResponse.contains("test_4"));
+		tester.assertContains("index_1.*index_2.*index_3");
+		assertFalse("should not remove any row",
+				lastResponse.contains("removeItem"));
+	}
+
+	@Test
+	public void removesRowThatBecomesEmpty() throws Exception
+	{
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage(4));
+		final String firstRow = tester.getComponentFromLastRenderedPage(
+				"container:underTest:1").getMarkupId();
+		final String secondRow = tester.getComponentFromLastRenderedPage(
+				"container:underTest:5").getMarkupId();
+		tester.clickLink("remove", true);
+		final String lastResponse = tester.getLastResponseAsString();
+		assertTrue("should remove the empty row", lastResponse.contains(
+				"AppendableListView.removeItem('" + secondRow + "');"));
+		assertFalse("should keep the first row", lastResponse.contains(
+				"AppendableListView.removeItem('" + firstRow + "');"));
+		// the second row is gone, so the next append must create a new row
+		// after the first one
+		tester.clickLink("append", true);
+		assertTrue("should insert new row after the first one", tester
+				.getLastResponseAsString().contains(
+						"AppendableListView.appendAllAfter('" + firstRow + "'"));
+		tester.assertContains("test_4");
+	}
+
+	@Test
+	public void goesToPreviousPageWhenPageBecomesEmpty() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage(8);
+		page.underTest.setCurrentPage(1);
+		tester.startPage(page);
+		tester.clickLink("remove", true);
+		tester.clickLink("remove", true);
+		tester.assertComponentOnAjaxResponse("container");
+		assertTrue("should signal page change", pageChangeCalled);
+		assertEquals("should be on first page (index 0) now", 0,
+				page.underTest.getCurrentPage());
+	}
+
+	@Test
+	public void usesClientPageCacheInNavigator() throws Exception
+	{
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage_PageCache(8));
+		final String container = tester.getComponentFromLastRenderedPage(
+				"container").getMarkupId();
+		tester.assertContains("AppendableListView.PageCache.shown\\('" +
+				container + "', 0, '[^']+', 3, true\\);");
+		tester.assertContains("AppendableListView.PageCache.show\\('" +
+				container + "', 1\\)");
+	}
+
+	@Test
+	public void doesNotCachePagesWithStatefulItems() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage_PageCache(8);
+		page.statefulItems = true;
+		tester.startPage(page);
+		final String container = tester.getComponentFromLastRenderedPage(
+				"container").getMarkupId();
+		tester.assertContains("AppendableListView.PageCache.shown\\('" +
+				container + "', 0, '[^']+', 3, false\\);");
+	}
+
+	@Test
+	public void repaintsAfterClientShowedCachedPage() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage_PageCache(8);
+		tester.startPage(page);
+		tester.clickLink("container:pager:next", true);
+		assertEquals(1, page.underTest.getCurrentPage());
+		// the client shows the first page from its cache
+		tester.getRequest().setParameter(ClientPageCacheBehavior.PARAMETER,
+				"0");
+		tester.executeBehavior(page.underTest
+				.getBehaviors(ClientPageCacheBehavior.class).get(0));
+		tester.assertContainsNot("test_");
+		assertEquals(0, page.underTest.getCurrentPage());
+		// the rendered items are those of the second page, so they can't be
+		// updated incrementally
+		tester.clickLink("remove", true);
+		tester.assertComponentOnAjaxResponse("container");
+		tester.assertContains("test_0.*test_2.*test_6");
+	}
+
+	@Test
+	public void invalidatesClientPageCacheWhenAppending() throws Exception
+	{
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage_PageCache(7));
+		final String container = tester.getComponentFromLastRenderedPage(
+				"container").getMarkupId();
+		tester.clickLink("append", true);
+		tester.assertContains("AppendableListView.PageCache.invalidate\\('" +
+				container + "', 1\\);");
+	}
+
+	@Test
+	public void loadsNextRowsInContinuousMode() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage(20);
+		page.underTest.setContinuous(true);
+		tester.startPage(page);
+		tester.assertContains("test_5");
+		tester.assertContainsNot("test_6");
+		tester.assertContains("AppendableListView.loadWhenVisible\\(");
+		tester.executeBehavior(page.underTest
+				.getBehaviors(LoadMoreBehavior.class).get(0));
+		final String lastResponse = tester.getLastResponseAsString();
+		assertFalse("should not repaint the grid",
+				lastResponse.contains("\"container\""));
+		assertTrue("should insert new rows",
+				lastResponse.contains("AppendableListView.appendAllAfter("));
+		tester.assertContains("test_6.*test_11");
+		tester.assertContains("index_6.*index_11");
+		tester.assertContainsNot("test_5");
+		tester.assertContainsNot("test_12");
+		assertTrue("should watch the new last row",
+				lastResponse.contains("AppendableListView.loadWhenVisible("));
+		assertEquals(2, appendedRows.size());
+		assertEquals(0, page.underTest.getCurrentPage());
+	}
+
+	@Test
+	public void evictsOldestRowsInContinuousMode() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage(20);
+		page.underTest.setContinuous(true);
+		page.underTest.setMaxRetainedRows(3);
+		tester.startPage(page);
+		final String firstRow = tester.getComponentFromLastRenderedPage(
+				"container:underTest:1").getMarkupId();
+		tester.executeBehavior(page.underTest
+				.getBehaviors(LoadMoreBehavior.class).get(0));
+		assertTrue("should remove the oldest row", tester
+				.getLastResponseAsString().contains(
+						"AppendableListView.removeItem('" + firstRow + "');"));
+		assertEquals(3, page.underTest.getFirstItemOffset());
+		tester.clickLink("reload", false);
+		tester.assertContains("test_3.*test_11");
+		tester.assertContainsNot("test_2<");
+		tester.assertContainsNot("test_12");
+		tester.assertContains("index_3");
+	}
+
+	@Test
+	public void fillsLoadedRowsWhenAppendingInContinuousMode() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage(5);
+		page.underTest.setContinuous(true);
+		tester.startPage(page);
+		tester.clickLink("append3", true);
+		// only one cell is left in the loaded rows, the rest is loaded when
+		// scrolling down
+		tester.assertContains("test_5");
+		tester.assertContainsNot("test_6");
+		assertFalse("should not signal a page change", pageChangeCalled);
+		tester.assertContains("AppendableListView.loadWhenVisible\\(");
+		tester.executeBehavior(page.underTest
+				.getBehaviors(LoadMoreBehavior.class).get(0));
+		tester.assertContains("test_6.*test_7");
+	}
+
+	@Test
+	public void usesPrefetchedItemsForNextPage() throws Exception
+	{
+		prefetchExecutor = prefetchTasks::add;
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage_AppendableProvider(20));
+		assertEquals("should prefetch after render", 1, prefetchTasks.size());
+		runPrefetchTasks();
+		iteratorCalls = 0;
+		tester.clickLink("container:pager:next");
+		tester.assertContains("test_6.*test_11");
+		assertEquals("should not query the provider for the next page", 0,
+				iteratorCalls);
+	}
+
+	@Test
+	public void queriesProviderIfPrefetchIsNotDone() throws Exception
+	{
+		prefetchExecutor = prefetchTasks::add;
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage_AppendableProvider(20));
+		iteratorCalls = 0;
+		tester.clickLink("container:pager:next");
+		tester.assertContains("test_6.*test_11");
+		assertEquals(1, iteratorCalls);
+	}
+
+	@Test
+	public void doesNotPrefetchAfterLastItem() throws Exception
+	{
+		prefetchExecutor = prefetchTasks::add;
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage_AppendableProvider(2));
+		// the range after the last item is empty until items are appended
+		assertEquals(0, prefetchTasks.size());
+		tester.clickLink("append3", true);
+		tester.assertContains("test_2.*test_3.*test_4");
+	}
+
+	@Test
+	public void usesPrefetchedItemsInContinuousMode() throws Exception
+	{
+		prefetchExecutor = prefetchTasks::add;
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage_AppendableProvider(20);
+		page.underTest.setContinuous(true);
+		tester.startPage(page);
+		runPrefetchTasks();
+		iteratorCalls = 0;
+		tester.executeBehavior(page.underTest
+				.getBehaviors(LoadMoreBehavior.class).get(0));
+		tester.assertContains("test_6.*test_11");
+		assertEquals("should not query the provider for the next rows", 0,
+				iteratorCalls);
+	}
+
+	@Test
+	public void loadsAppendedModelsOnModelLoadingExecutor() throws Exception
+	{
+		modelLoadingExecutor = task ->
+		{
+			modelLoadingTasks++;
+			task.run();
+		};
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage(2));
+		assertEquals("should not load models when rendering the page", 0,
+				modelLoadingTasks);
+		tester.clickLink("append3", true);
+		assertEquals(3, modelLoadingTasks);
+		final String lastResponse = tester.getLastResponseAsString();
+		assertTrue(lastResponse.contains("test_2"));
+		assertTrue(lastResponse.contains("test_4"));
+	}
+
+	private void runPrefetchTasks()
+	{
+		for (Runnable task : new ArrayList<>(prefetchTasks))
+		{
+			task.run();
+		}
+		prefetchTasks.clear();
+	}
+
 	private WicketTester newTester()
 	{
 		final WicketTester tester = new WicketTester();
@@ -251,10 +767,32 @@ public class AppendableGridViewTest
 		}
 	}
 
+	public class TestPage_PageCache extends TestPage {
+		public TestPage_PageCache(int initial) {
+			super(initial);
+			underTest.setClientPageCacheSize(3);
+			((MarkupContainer) get("container")).replace(
+					new AppendablePagingNavigator("pager", underTest));
+		}
+	}
+
+	public class TestPage_AppendableProvider extends TestPage {
+		public TestPage_AppendableProvider(int initial) {
+			super(initial);
+		}
+
+		@Override
+		IDataProvider<Integer> newDataProvider(List<Integer> list)
+		{
+			return new AppendableListDataProvider(list);
+		}
+	}
+
 	public class TestPage extends WebPage
 	{
 		final AppendableGridView<Integer> underTest;
 		private int counter = 0;
+		boolean statefulItems = false;
 
 		public TestPage(int initial)
 		{
@@ -265,8 +803,7 @@ public class AppendableGridViewTest
 			}
 			WebMarkupContainer container = new WebMarkupContainer("container");
 			add(container);
-			IDataProvider<Integer>
-					dataProvider = new ListDataProvider(list);
+			IDataProvider<Integer> dataProvider = newDataProvider(list);
 			underTest = new
 					AppendableGridView<Integer>("underTest", dataProvider)
 					{
@@ -280,8 +817,20 @@ public class AppendableGridViewTest
 						@Override
 						protected void populateItem(Item<Integer> item)
 						{
-							item.add(new Label("label",
-									"test_" + item.getModelObject()));
+							final Label label = new Label("label",
+									"test_" + item.getModelObject());
+							if (statefulItems)
+							{
+								label.add(new AjaxEventBehavior("click")
+								{
+									@Override
+									protected void onEvent(
+											AjaxRequestTarget target)
+									{
+									}
+								});
+							}
+							item.add(label);
 							item.add(new Label("index", "index_" + item
 									.getIndex()));
 						}
@@ -306,6 +855,32 @@ public class AppendableGridViewTest
 						{
 							pageChangeCalled = true;
 						}
+
+						@Override
+						protected Executor getPrefetchExecutor()
+						{
+							return prefetchExecutor;
+						}
+
+						@Override
+						protected Executor getModelLoadingExecutor()
+						{
+							return modelLoadingExecutor;
+						}
+
+						@Override
+						protected void onItemsPendingAfterAppend(
+								long pendingCount, AjaxRequestTarget ajax)
+						{
+							pendingItemCount = pendingCount;
+						}
+
+						@Override
+						protected void onPageChangeAfterRemove(
+								AjaxRequestTarget ajax)
+						{
+							pageChangeCalled = true;
+						}
 					};
 			underTest.setColumns(3);
 			underTest.setRows(2);
@@ -331,6 +906,27 @@ public class AppendableGridViewTest
 					underTest.itemsAppended(ajax);
 				}
 			});
+			add(new AjaxLink<Void>("append6")
+			{
+				@Override
+				public void onClick(AjaxRequestTarget ajax)
+				{
+					for (int i = 0; i < 6; i++)
+					{
+						list.add(counter++);
+					}
+					underTest.itemsAppended(ajax);
+				}
+			});
+			add(new AjaxLink<Void>("remove")
+			{
+				@Override
+				public void onClick(AjaxRequestTarget ajax)
+				{
+					list.remove(1);
+					underTest.itemRemoved(1, ajax);
+				}
+			});
 			add(new Link<Void>("reload") {
 				@Override
 				public void onClick()
@@ -339,6 +935,78 @@ public class AppendableGridViewTest
 				}
 			});
 		}
+
+		IDataProvider<Integer> newDataProvider(List<Integer> list)
+		{
+			return new ListDataProvider(list);
+		}
+	}
+
+	public class TestPage_Huge extends TestPage {
+		public TestPage_Huge(int initial) {
+			super(initial);
+			underTest.setCurrentPage(underTest.getPageCount() - 1);
+		}
+
+		@Override
+		IDataProvider<Integer> newDataProvider(List<Integer> list)
+		{
+			return new HugeDataProvider(list);
+		}
+	}
+
+	/**
+	 * Pretends there are {@link #OFFSET} items before the ones in the list.
+	 */
+	private static class HugeDataProvider extends ListDataProvider
+	{
+		static final long OFFSET = 3000000000L;
+
+		public HugeDataProvider(List<Integer> list)
+		{
+			super(list);
+		}
+
+		@Override
+		public Iterator iterator(long first, long count)
+		{
+			return super.iterator(first - OFFSET, count);
+		}
+
+		@Override
+		public long size()
+		{
+			return OFFSET + super.size();
+		}
+	}
+
+	private class AppendableListDataProvider extends ListDataProvider
+			implements IAppendableDataProvider<Integer>
+	{
+		public AppendableListDataProvider(List<Integer> list)
+		{
+			super(list);
+		}
+
+		@Override
+		public long size()
+		{
+			sizeCalls++;
+			return super.size();
+		}
+
+		@Override
+		public Iterator iterator(long first, long count)
+		{
+			iteratorCalls++;
+			return super.iterator(first, count);
+		}
+
+		@Override
+		public long countAppendedSince(long knownSize)
+		{
+			return super.size() - knownSize;
+		}
 	}
 
 	private static class ListDataProvider implements IDataProvider<Integer>
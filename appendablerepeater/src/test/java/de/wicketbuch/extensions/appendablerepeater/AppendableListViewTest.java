@@ -18,18 +18,31 @@ package de.wicketbuch.extensions.appendablerepeater;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.apache.wicket.Component;
 import org.apache.wicket.ajax.AjaxRequestTarget;
 import org.apache.wicket.ajax.markup.html.AjaxLink;
 import org.apache.wicket.markup.html.WebMarkupContainer;
 import org.apache.wicket.markup.html.WebPage;
 import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.util.ListModel;
 import org.apache.wicket.util.tester.WicketTester;
 import org.junit.Test;
 
@@ -92,11 +105,375 @@ public class AppendableListViewTest
 				"<?xml version=\"1.0\" encoding=\"UTF-8\"?><ajax-response></ajax-response>")));
 	}
 
+	@Test
+	public void recyclesRemovedItem()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new RecyclingTestPage(3);
+		tester.startPage(page);
+		final Component lastItem = tester.getComponentFromLastRenderedPage("container:underTest:2");
+		tester.clickLink("remove", true);
+		tester.clickLink("append", true);
+		tester.assertContains("test_3");
+		assertSame("removed item should have been reused for the new element", lastItem,
+				tester.getComponentFromLastRenderedPage("container:underTest:2"));
+	}
+
+	@Test
+	public void givesRecycledChildrenNewMarkupIds()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new RecyclingTestPage(3);
+		page.labelMarkupIds = true;
+		tester.startPage(page);
+		final String oldLabelMarkupId =
+				tester.getComponentFromLastRenderedPage("container:underTest:2:label").getMarkupId();
+		tester.clickLink("remove", true);
+		tester.clickLink("append", true);
+		// the label's old element is still in the DOM, in the item that took over the removed item's markup id
+		assertNotEquals(oldLabelMarkupId,
+				tester.getComponentFromLastRenderedPage("container:underTest:2:label").getMarkupId());
+	}
+
+	@Test
+	public void appendsAndRemovesWithoutRetainingItems()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(3, false);
+		tester.startPage(page);
+		tester.assertContains("test_2");
+		assertEquals("items should be dropped after the request", 0, page.underTest.size());
+		final String fullMarkup = tester.getLastResponseAsString();
+		final String lastMarkupId = findMarkupId(fullMarkup, "test_2");
+		tester.clickLink("append", true);
+		tester.assertContains("appendAfter\\('" + lastMarkupId + "'");
+		tester.assertContains("test_3");
+		tester.assertContainsNot("test_2");
+		final String secondMarkupId = findMarkupId(fullMarkup, "test_1");
+		tester.clickLink("remove", true);
+		tester.assertContains("removeItem\\('" + secondMarkupId + "'\\)");
+		assertEquals(Arrays.asList(0, 2, 3), ((KeyedListModel<?, ?>) page.underTest.getDefaultModel()).getKeys());
+		tester.startPage(tester.getLastRenderedPage()); // do a full re-render
+		tester.assertContains("test_0");
+		tester.assertContainsNot("test_1");
+		tester.assertContains("test_3");
+	}
+
+	@Test
+	public void hydratesPlaceholderWhenRequested()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(3);
+		page.underTest.setLazyHydration(true);
+		tester.startPage(page);
+		tester.clickLink("append", true);
+		tester.assertContainsNot("test_3");
+		tester.assertContains("hydrateWhenVisible");
+		final Component placeholder = tester.getComponentFromLastRenderedPage("container:underTest:3");
+		tester.getRequest().setParameter(LazyHydrationBehavior.PARAMETER, placeholder.getMarkupId());
+		tester.executeBehavior(page.underTest.getBehaviors(LazyHydrationBehavior.class).get(0));
+		tester.assertComponentOnAjaxResponse(placeholder);
+		tester.assertContains("test_3");
+		tester.assertContainsNot("test_2");
+	}
+
+	@Test
+	public void virtualizesOnClient()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(3);
+		page.underTest.setClientVirtualization(true).setVirtualizationOverscan(200);
+		tester.startPage(page);
+		final String containerId = tester.getComponentFromLastRenderedPage("container").getMarkupId();
+		tester.assertContains("data-appendable-item");
+		tester.assertContains("AppendableListView.virtualize\\('" + containerId + "', 200\\)");
+		tester.clickLink("append", true);
+		tester.assertContains("AppendableListView.refreshVirtualization\\('" + containerId + "', 200\\)");
+	}
+
+	@Test
+	public void streamsAppendedItemsInChunks()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(2);
+		page.underTest.setStreamChunkSize(2);
+		tester.startPage(page);
+		final String lastMarkupId = findMarkupId(tester.getLastResponseAsString(), "test_1");
+		tester.clickLink("stream5", true);
+		tester.assertContains("AppendableListView.stream\\('[^']*&from=2&to=7', '" + lastMarkupId + "'\\)");
+		tester.assertContainsNot("test_2");
+		streamItems(tester, page, 2, 7);
+		final String[] chunks = tester.getLastResponseAsString().split("\n");
+		assertEquals(3, chunks.length);
+		assertTrue(chunks[0].startsWith("{\"html\":\""));
+		assertTrue(chunks[0].contains("test_2") && chunks[0].contains("test_3"));
+		assertTrue(chunks[2].contains("test_6") && !chunks[2].contains("test_5"));
+		// the next item goes after the last streamed one
+		final String lastStreamedMarkupId = findMarkupId(
+				chunks[2].replace("\\\"", "\"").replace("\\n", "\n").replace("\\t", "\t"), "test_6");
+		tester.clickLink("append", true);
+		tester.assertContains("appendAfter\\('" + lastStreamedMarkupId + "'");
+	}
+
+	@Test
+	public void streamsOnlyChunksForPlainFetch()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(2);
+		tester.startPage(page);
+		tester.clickLink("stream5", true);
+		final int populated = page.populateCount;
+		// the browser fetches the stream without the wicket-ajax header
+		final Matcher url = Pattern.compile("AppendableListView.stream\\('([^']*)'").matcher(
+				tester.getLastResponseAsString());
+		assertTrue(url.find());
+		tester.executeUrl(url.group(1).replace("&amp;", "&"));
+		final String[] chunks = tester.getLastResponseAsString().split("\n");
+		assertEquals(1, chunks.length);
+		assertTrue(chunks[0].startsWith("{\"html\":\"") && chunks[0].endsWith("\"}"));
+		assertEquals("the page should not be rendered again", populated + 5, page.populateCount);
+	}
+
+	@Test
+	public void escapesStreamedChunks()
+	{
+		assertEquals("{\"html\":\"a\\u2028b\\u2029c\\u0001\\\"\\\\<\\/script>\\n\"}\n",
+				StreamBehavior.toJsonLine("a\u2028b\u2029c\u0001\"\\</script>\n").toString());
+	}
+
+	@Test
+	public void repaintsWhenAppendingBeforeStreamIsDone()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(2, false);
+		tester.startPage(page);
+		tester.clickLink("stream5", true);
+		tester.clickLink("append", true);
+		tester.assertComponentOnAjaxResponse("container");
+		// the stream is outdated now
+		streamItems(tester, page, 2, 7);
+		assertEquals("", tester.getLastResponseAsString());
+	}
+
+	@Test
+	public void streamsWithoutRetainingItems()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(2, false);
+		tester.startPage(page);
+		tester.clickLink("stream5", true);
+		streamItems(tester, page, 2, 7);
+		tester.assertContains("test_6");
+		assertEquals("items should not be kept", 0, page.underTest.size());
+		tester.clickLink("remove", true);
+		tester.assertContains("removeItem");
+	}
+
+	@Test
+	public void rendersCachedItemsWithoutPopulating()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(3);
+		page.underTest.setRenderCacheSize(10);
+		tester.startPage(page);
+		final String lastMarkupId = findMarkupId(tester.getLastResponseAsString(), "test_2");
+		assertEquals(3, page.populateCount);
+		tester.startPage(page); // do a full re-render
+		assertEquals("cached items should not be populated again", 3, page.populateCount);
+		tester.assertContains("test_0");
+		assertEquals(lastMarkupId, findMarkupId(tester.getLastResponseAsString(), "test_2"));
+		tester.clickLink("append", true);
+		tester.assertContains("appendAfter\\('" + lastMarkupId + "'");
+		assertEquals(4, page.populateCount);
+	}
+
+	@Test
+	public void evictsLeastRecentlyRenderedItems()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(3);
+		page.underTest.setRenderCacheSize(2);
+		tester.startPage(page);
+		tester.clickLink("remove", true);
+		tester.startPage(page);
+		// 0 was evicted by 2 during the first render, so only 2 is still cached
+		assertEquals(4, page.populateCount);
+		tester.assertContains("test_0");
+		tester.assertContains("test_2");
+	}
+
+	@Test
+	public void populatesDuplicateKeysInsteadOfReusingMarkupIds()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(2);
+		page.underTest.setRenderCacheSize(10);
+		page.underTest.getModelObject().add(0);
+		tester.startPage(page);
+		tester.startPage(page);
+		final Matcher matcher = Pattern.compile(" id=\"([^\"]+)\"[^>]*>\\s*<span wicket:id=\"label\">test_0<")
+				.matcher(tester.getLastResponseAsString());
+		assertTrue(matcher.find());
+		final String first = matcher.group(1);
+		assertTrue(matcher.find());
+		assertNotEquals(first, matcher.group(1));
+		assertEquals("only the duplicate should be populated again", 4, page.populateCount);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNegativeRenderCacheSize()
+	{
+		// components need an application
+		new WicketTester();
+		new TestPage(0).underTest.setRenderCacheSize(-1);
+	}
+
+	@Test
+	public void doesNotCacheByDefault()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(3);
+		tester.startPage(page);
+		tester.startPage(page);
+		assertEquals(6, page.populateCount);
+	}
+
+	@Test
+	public void appendsPrerenderedItems()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(3);
+		page.underTest.setRenderCacheSize(10);
+		page.prerenderExecutor = Runnable::run;
+		tester.startPage(page);
+		page.underTest.prerender(Arrays.asList(3, 4));
+		assertEquals("items should be populated on a copy of the page", 3, page.populateCount);
+		tester.clickLink("append", true);
+		assertEquals("prerendered item should not be populated again", 3, page.populateCount);
+		tester.assertContains("test_3");
+		final String markupId = findMarkupId(tester.getLastResponseAsString(), "test_3");
+		tester.clickLink("append", true);
+		tester.assertContains("appendAfter\\('" + markupId + "'");
+		assertEquals(3, page.populateCount);
+	}
+
+	@Test
+	public void givesPrerenderedChildrenUniqueMarkupIds()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(3);
+		page.underTest.setRenderCacheSize(10);
+		page.prerenderExecutor = Runnable::run;
+		page.labelMarkupIds = true;
+		tester.startPage(page);
+		page.underTest.prerender(Arrays.asList(3, 4));
+		tester.clickLink("append", true);
+		final String first = findLabelMarkupId(tester.getLastResponseAsString());
+		tester.clickLink("append", true);
+		final String second = findLabelMarkupId(tester.getLastResponseAsString());
+		assertEquals(3, page.populateCount);
+		assertNotEquals(first, second);
+		assertTrue(first.startsWith(page.underTest.getMarkupId() + "_p"));
+	}
+
+	@Test
+	public void keepsAtMostRenderCacheSizePrerenderedItems()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(3);
+		page.underTest.setRenderCacheSize(2);
+		final List<Runnable> tasks = new ArrayList<>();
+		page.prerenderExecutor = tasks::add;
+		tester.startPage(page);
+		page.underTest.prerender(Arrays.asList(3, 4, 5));
+		assertEquals("all items should be rendered in one task", 1, tasks.size());
+		tasks.forEach(Runnable::run);
+		tasks.clear();
+		for (int i = 0; i < 3; i++)
+		{
+			tester.clickLink("append", true);
+		}
+		assertEquals("only 5 should not have been pre-rendered", 4, page.populateCount);
+		// the pending items were taken, so there is room again
+		page.underTest.prerender(Arrays.asList(6, 7, 8));
+		tasks.forEach(Runnable::run);
+		for (int i = 0; i < 3; i++)
+		{
+			tester.clickLink("append", true);
+		}
+		assertEquals("only 8 should not have been pre-rendered", 5, page.populateCount);
+	}
+
+	@Test
+	public void prerendersOnThreadPool() throws Exception
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(3);
+		page.underTest.setRenderCacheSize(10);
+		final ExecutorService pool = Executors.newFixedThreadPool(4);
+		page.prerenderExecutor = pool;
+		tester.startPage(page);
+		page.underTest.prerender(Arrays.asList(3, 4, 5));
+		page.underTest.prerender(Arrays.asList(6, 7));
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+		for (int i = 3; i < 8; i++)
+		{
+			tester.clickLink("append", true);
+			tester.assertContains("test_" + i);
+		}
+		assertEquals("all appended items should have been pre-rendered", 3, page.populateCount);
+	}
+
+	private static String findLabelMarkupId(String markup)
+	{
+		final Matcher matcher = Pattern.compile("wicket:id=\"label\" id=\"([^\"]+)\"").matcher(markup);
+		assertTrue("no label found", matcher.find());
+		return matcher.group(1);
+	}
+
+	@Test
+	public void doesNotPrerenderWithoutExecutor()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = new TestPage(3);
+		page.underTest.setRenderCacheSize(10);
+		tester.startPage(page);
+		page.underTest.prerender(Arrays.asList(3, 4));
+		assertEquals(3, page.populateCount);
+		tester.clickLink("append", true);
+		assertEquals(4, page.populateCount);
+	}
+
+	private static void streamItems(WicketTester tester, TestPage page, int from, int to)
+	{
+		tester.getRequest().setParameter(StreamBehavior.FROM, String.valueOf(from));
+		tester.getRequest().setParameter(StreamBehavior.TO, String.valueOf(to));
+		tester.executeBehavior(page.underTest.getBehaviors(StreamBehavior.class).get(0));
+	}
+
+	private static String findMarkupId(String markup, String label)
+	{
+		final Matcher matcher =
+				Pattern.compile(" id=\"([^\"]+)\"[^>]*>\\s*<span wicket:id=\"label\">" + label + "<").matcher(markup);
+		assertTrue("no item found for " + label, matcher.find());
+		return matcher.group(1);
+	}
+
 	public static class TestPage extends WebPage
 	{
+		final AppendableListView<Integer> underTest;
 		private int counter = 0;
+		int populateCount = 0;
+		transient Executor prerenderExecutor;
+		boolean labelMarkupIds = false;
 
 		public TestPage(int initial)
+		{
+			this(initial, true);
+		}
+
+		public TestPage(int initial, boolean retainItems)
 		{
 			List<Integer> list = new ArrayList<>();
 			for (int i = 0; i < initial; i++)
@@ -105,14 +482,50 @@ public class AppendableListViewTest
 			}
 			WebMarkupContainer container = new WebMarkupContainer("container");
 			add(container);
-			final AppendableListView<Integer> underTest = new AppendableListView<Integer>("underTest", list)
+			final IModel<List<Integer>> listModel;
+			if (retainItems)
+			{
+				listModel = new ListModel<>(list);
+			}
+			else
+			{
+				listModel = new KeyedListModel<Integer, Integer>(list)
+				{
+					@Override
+					protected Integer getKey(Integer element)
+					{
+						return element;
+					}
+
+					@Override
+					protected List<Integer> loadElements(List<Integer> keys)
+					{
+						return keys;
+					}
+				};
+			}
+			underTest = new AppendableListView<Integer>("underTest", listModel)
 			{
 				@Override
 				protected void populateItem(AppendableListItem item)
 				{
-					item.add(new Label("label", "test_" + item.getModelObject()));
+					populateCount++;
+					item.add(newLabel(item).setOutputMarkupId(labelMarkupIds));
+				}
+
+				@Override
+				protected Object getRenderCacheKey(Integer element)
+				{
+					return element;
+				}
+
+				@Override
+				protected Executor getPrerenderExecutor()
+				{
+					return prerenderExecutor;
 				}
 			};
+			underTest.setRetainItems(retainItems);
 			container.add(underTest);
 			add(new AjaxLink<Void>("append")
 			{
@@ -122,6 +535,19 @@ public class AppendableListViewTest
 					underTest.appendNewItemFor(counter++, ajax);
 				}
 			});
+			add(new AjaxLink<Void>("stream5")
+			{
+				@Override
+				public void onClick(AjaxRequestTarget ajax)
+				{
+					final List<Integer> newElements = new ArrayList<>();
+					for (int i = 0; i < 5; i++)
+					{
+						newElements.add(counter++);
+					}
+					underTest.streamNewItemsFor(newElements, ajax);
+				}
+			});
 			add(new AjaxLink<Void>("remove")
 			{
 				@Override
@@ -139,5 +565,28 @@ public class AppendableListViewTest
 				}
 			});
 		}
+
+		Label newLabel(AppendableListView<Integer>.AppendableListItem item)
+		{
+			return new Label("label", "test_" + item.getModelObject());
+		}
+	}
+
+	/**
+	 * Recycled ListItems are not populated again, so here the label follows the item's model.
+	 */
+	public static class RecyclingTestPage extends TestPage
+	{
+		public RecyclingTestPage(int initial)
+		{
+			super(initial);
+			underTest.setMaxRecycledItems(1);
+		}
+
+		@Override
+		Label newLabel(AppendableListView<Integer>.AppendableListItem item)
+		{
+			return new Label("label", item.getModel().map(i -> "test_" + i));
+		}
 	}
-}
+}
\ No newline at end of file
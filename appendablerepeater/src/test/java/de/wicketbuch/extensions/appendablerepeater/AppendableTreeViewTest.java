@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.markup.html.AjaxLink;
+import org.apache.wicket.extensions.markup.html.repeater.tree.ITreeProvider;
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.util.io.IClusterable;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.Test;
+
+public class AppendableTreeViewTest
+{
+	private final List<String> appendedNodes = new ArrayList<>();
+
+	@Test
+	public void rendersDepthFirst() throws Exception
+	{
+		final WicketTester tester = newTester();
+		tester.startPage(new TestPage());
+		tester.assertContains("a.*depth_0.*a1.*depth_1.*a1x.*depth_2.*a2.*depth_1" +
+				".*b.*depth_0");
+	}
+
+	@Test
+	public void appendsAfterLeafParent() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage();
+		tester.startPage(page);
+		page.replyTo = "a2";
+		tester.clickLink("reply", true);
+		final String lastResponse = tester.getLastResponseAsString();
+		assertTrue(lastResponse.contains("AppendableListView.appendAfter('" +
+				page.markupIdOf("a2") + "', '" + page.markupIdOf("new") + "', 'div');"));
+		assertTrue(lastResponse.contains("depth_2"));
+		assertFalse("should not repaint other nodes", lastResponse.contains("a1x"));
+		assertEquals(1, appendedNodes.size());
+	}
+
+	@Test
+	public void appendsAfterLastDescendantOfParent() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage();
+		tester.startPage(page);
+		page.replyTo = "a";
+		tester.clickLink("reply", true);
+		assertTrue(tester.getLastResponseAsString().contains("AppendableListView.appendAfter('" +
+				page.markupIdOf("a2") + "', '" + page.markupIdOf("new") + "', 'div');"));
+	}
+
+	@Test
+	public void updatesLastDescendantOfAncestors() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage();
+		tester.startPage(page);
+		// becomes the last node under a
+		page.replyTo = "a2";
+		tester.clickLink("reply", true);
+		final String firstReply = page.markupIdOf("new");
+		// so replies to a go after it
+		page.replyTo = "a";
+		tester.clickLink("reply", true);
+		assertTrue(tester.getLastResponseAsString().contains("AppendableListView.appendAfter('" +
+				firstReply + "', '" + page.markupIdOf("new") + "', 'div');"));
+	}
+
+	@Test
+	public void appendsRootAfterLastNode() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage();
+		tester.startPage(page);
+		page.replyTo = null;
+		tester.clickLink("reply", true);
+		assertTrue(tester.getLastResponseAsString().contains("AppendableListView.appendAfter('" +
+				page.markupIdOf("b") + "', '" + page.markupIdOf("new") + "', 'div');"));
+		tester.assertContains("depth_0");
+	}
+
+	@Test
+	public void repaintsWhenParentIsNotRendered() throws Exception
+	{
+		final WicketTester tester = newTester();
+		final TestPage page = new TestPage();
+		tester.startPage(page);
+		page.replyTo = "unknown";
+		tester.clickLink("reply", true);
+		tester.assertComponentOnAjaxResponse("container");
+		assertTrue(appendedNodes.isEmpty());
+	}
+
+	private WicketTester newTester()
+	{
+		final WicketTester tester = new WicketTester();
+		tester.getApplication().getDebugSettings()
+		      .setComponentPathAttributeName("path");
+		return tester;
+	}
+
+	private static class Node implements IClusterable
+	{
+		final String name;
+		final List<Node> children = new ArrayList<>();
+
+		Node(String name, Node... children)
+		{
+			this.name = name;
+			for (Node child : children)
+			{
+				this.children.add(child);
+			}
+		}
+	}
+
+	private static class NodeProvider implements ITreeProvider<Node>
+	{
+		private final List<Node> roots;
+
+		NodeProvider(List<Node> roots)
+		{
+			this.roots = roots;
+		}
+
+		@Override
+		public Iterator<? extends Node> getRoots()
+		{
+			return roots.iterator();
+		}
+
+		@Override
+		public boolean hasChildren(Node node)
+		{
+			return !node.children.isEmpty();
+		}
+
+		@Override
+		public Iterator<? extends Node> getChildren(Node node)
+		{
+			return node.children.iterator();
+		}
+
+		@Override
+		public IModel<Node> model(Node node)
+		{
+			return Model.of(node);
+		}
+
+		@Override
+		public void detach()
+		{
+
+		}
+	}
+
+	public class TestPage extends WebPage
+	{
+		final AppendableTreeView<Node> underTest;
+		final List<Node> roots = new ArrayList<>();
+		String replyTo;
+
+		public TestPage()
+		{
+			roots.add(new Node("a", new Node("a1", new Node("a1x")), new Node("a2")));
+			roots.add(new Node("b"));
+			final WebMarkupContainer container = new WebMarkupContainer("container");
+			add(container);
+			underTest = new AppendableTreeView<Node>("underTest", new NodeProvider(roots))
+			{
+				@Override
+				protected void populateItem(AppendableTreeItem item)
+				{
+					item.add(new Label("label", item.getModelObject().name));
+					item.add(new Label("depth", "depth_" + item.getDepth()));
+				}
+
+				@Override
+				protected Object getNodeKey(Node node)
+				{
+					return node.name;
+				}
+
+				@Override
+				protected void onAppendItem(AppendableTreeItem newItem, AjaxRequestTarget ajax)
+				{
+					appendedNodes.add(newItem.getModelObject().name);
+				}
+			};
+			container.add(underTest);
+			add(new AjaxLink<Void>("reply")
+			{
+				@Override
+				public void onClick(AjaxRequestTarget ajax)
+				{
+					final Node parent = replyTo == null ? null : find(roots, replyTo);
+					final Node child = new Node("new");
+					(parent == null ? roots : parent.children).add(child);
+					underTest.childAppended(parent != null || replyTo == null ? parent : new Node(replyTo),
+							child, ajax);
+				}
+			});
+		}
+
+		String markupIdOf(String name)
+		{
+			String markupId = null;
+			for (Component item : underTest)
+			{
+				if (name.equals(((Node) item.getDefaultModelObject()).name))
+				{
+					markupId = item.getMarkupId();
+				}
+			}
+			return markupId;
+		}
+
+		private Node find(List<Node> nodes, String name)
+		{
+			for (Node node : nodes)
+			{
+				if (node.name.equals(name))
+				{
+					return node;
+				}
+				final Node found = find(node.children, name);
+				if (found != null)
+				{
+					return found;
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.wicket.markup.repeater.data.ListDataProvider;
+import org.junit.Test;
+
+public class CachingDataProviderTest
+{
+	private final List<String> items = new ArrayList<>();
+	private final List<Long> reads = new ArrayList<>();
+
+	@Test
+	public void readsAlignedBlocks() throws Exception
+	{
+		fill(25);
+		final CachingDataProvider<String> provider = new CachingDataProvider<>(new CountingProvider(), 10, 5);
+		assertEquals(list("test_8", "test_9", "test_10", "test_11"), read(provider, 8, 4));
+		assertEquals(list(0L, 10L), reads);
+	}
+
+	@Test
+	public void overlappingReadsHitCache() throws Exception
+	{
+		fill(25);
+		final CachingDataProvider<String> provider = new CachingDataProvider<>(new CountingProvider(), 10, 5);
+		read(provider, 0, 10);
+		read(provider, 5, 10);
+		assertEquals(list("test_3", "test_4"), read(provider, 3, 2));
+		assertEquals(list(0L, 10L), reads);
+	}
+
+	@Test
+	public void readsOnlyUntilEndOfData() throws Exception
+	{
+		fill(15);
+		final CachingDataProvider<String> provider = new CachingDataProvider<>(new CountingProvider(), 10, 5);
+		assertEquals(list("test_13", "test_14"), read(provider, 13, 20));
+		assertEquals(list(10L), reads);
+	}
+
+	@Test
+	public void rereadsPartialBlockWhenItemsAreAppended() throws Exception
+	{
+		fill(15);
+		final CachingDataProvider<String> provider = new CachingDataProvider<>(new CountingProvider(), 10, 5);
+		assertEquals(15, provider.size());
+		read(provider, 0, 15);
+		fill(18);
+		assertEquals(3, provider.countAppendedSince(15));
+		assertEquals(list("test_14", "test_15", "test_16", "test_17"), read(provider, 14, 4));
+		assertEquals(list(0L, 10L, 10L), reads);
+	}
+
+	@Test
+	public void cachesSizeUntilDetach() throws Exception
+	{
+		fill(15);
+		final CachingDataProvider<String> provider = new CachingDataProvider<>(new CountingProvider(), 10, 5);
+		assertEquals(15, provider.size());
+		fill(18);
+		assertEquals(15, provider.size());
+		provider.detach();
+		assertEquals(18, provider.size());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedBlock() throws Exception
+	{
+		fill(40);
+		final CachingDataProvider<String> provider = new CachingDataProvider<>(new CountingProvider(), 10, 2);
+		read(provider, 0, 10);
+		read(provider, 10, 10);
+		read(provider, 0, 10);
+		read(provider, 20, 10);
+		reads.clear();
+		read(provider, 0, 10);
+		read(provider, 10, 10);
+		assertEquals(list(10L), reads);
+	}
+
+	@Test
+	public void invalidateDropsEverything() throws Exception
+	{
+		fill(10);
+		final CachingDataProvider<String> provider = new CachingDataProvider<>(new CountingProvider(), 10, 5);
+		read(provider, 0, 10);
+		items.set(3, "changed");
+		provider.invalidate();
+		assertEquals(list("changed"), read(provider, 3, 1));
+		assertEquals(list(0L, 0L), reads);
+	}
+
+	private void fill(int size)
+	{
+		for (int i = items.size(); i < size; i++)
+		{
+			items.add("test_" + i);
+		}
+	}
+
+	private static List<String> read(CachingDataProvider<String> provider, long first, long count)
+	{
+		final List<String> result = new ArrayList<>();
+		provider.iterator(first, count).forEachRemaining(result::add);
+		return result;
+	}
+
+	@SafeVarargs
+	private static <E> List<E> list(E... elements)
+	{
+		final List<E> result = new ArrayList<>();
+		for (E element : elements)
+		{
+			result.add(element);
+		}
+		return result;
+	}
+
+	private class CountingProvider extends ListDataProvider<String>
+	{
+		CountingProvider()
+		{
+			super(items);
+		}
+
+		@Override
+		public Iterator<String> iterator(long first, long count)
+		{
+			reads.add(first);
+			return super.iterator(first, count);
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.markup.html.AjaxLink;
+import org.apache.wicket.core.util.lang.WicketObjects;
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChunkedFileListTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsBackSpilledAndTailElements() throws Exception
+	{
+		final File directory = folder.newFolder();
+		final ChunkedFileList<String> list = new ChunkedFileList<>(directory, 3);
+		final List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 10; i++)
+		{
+			list.add("element_" + i);
+			expected.add("element_" + i);
+		}
+		assertEquals(10, list.size());
+		assertEquals("the list should have its own directory", 1, directory.listFiles().length);
+		assertEquals("three full chunks should have been written", 3, directory.listFiles()[0].listFiles().length);
+		assertEquals(expected, list);
+		assertEquals("element_4", list.get(4));
+		assertEquals("element_9", list.get(9));
+	}
+
+	@Test
+	public void survivesSerialization() throws Exception
+	{
+		final ChunkedFileList<Integer> list = new ChunkedFileList<>(folder.newFolder(), 4);
+		for (int i = 0; i < 10; i++)
+		{
+			list.add(i);
+		}
+		final ChunkedFileList<Integer> copy = WicketObjects.cloneObject(list);
+		copy.add(10);
+		assertEquals(11, copy.size());
+		assertEquals(Integer.valueOf(1), copy.get(1));
+		assertEquals(Integer.valueOf(10), copy.get(10));
+	}
+
+	@Test
+	public void clearsAfterReading() throws Exception
+	{
+		final ChunkedFileList<Integer> list = new ChunkedFileList<>(folder.newFolder(), 2);
+		for (int i = 0; i < 5; i++)
+		{
+			list.add(i);
+		}
+		// maps the chunk files
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4), list);
+		list.clear();
+		assertTrue(list.isEmpty());
+		for (int i = 10; i < 13; i++)
+		{
+			list.add(i);
+		}
+		assertEquals(Arrays.asList(10, 11, 12), list);
+	}
+
+	@Test
+	public void serializedCopiesKeepTheirOwnChunks() throws Exception
+	{
+		final File directory = folder.newFolder();
+		final ChunkedFileList<Integer> list = new ChunkedFileList<>(directory, 2);
+		list.add(0);
+		list.add(1);
+		final ChunkedFileList<Integer> olderVersion = WicketObjects.cloneObject(list);
+		list.add(2);
+		list.add(3);
+		// writes its own second chunk with different elements
+		olderVersion.add(20);
+		olderVersion.add(30);
+		assertEquals(Arrays.asList(0, 1, 2, 3), list);
+		assertEquals(Arrays.asList(0, 1, 20, 30), olderVersion);
+		olderVersion.clear();
+		assertEquals(Arrays.asList(0, 1, 2, 3), list);
+		assertEquals("the copies should share the directory", 1, directory.listFiles().length);
+	}
+
+	@Test
+	public void doesNotSerializeWrittenChunks() throws Exception
+	{
+		final ChunkedFileList<String> list = new ChunkedFileList<>(folder.newFolder(), 10);
+		final char[] chars = new char[1000];
+		Arrays.fill(chars, 'x');
+		for (int i = 0; i < 100; i++)
+		{
+			list.add(new String(chars));
+		}
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+		{
+			out.writeObject(list);
+		}
+		assertTrue("only the chunk file names should be serialized, not " + bytes.size() + " bytes",
+				bytes.size() < 2000);
+		final ChunkedFileList<String> copy = WicketObjects.cloneObject(list);
+		assertEquals(list, copy);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void cannotRemove() throws Exception
+	{
+		final ChunkedFileList<Integer> list = new ChunkedFileList<>(folder.newFolder(), 2);
+		list.add(1);
+		list.remove(Integer.valueOf(1));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void cannotInsert() throws Exception
+	{
+		final ChunkedFileList<Integer> list = new ChunkedFileList<>(folder.newFolder(), 2);
+		list.add(1);
+		list.add(0, 0);
+	}
+
+	@Test
+	public void worksWithAppendableListView() throws Exception
+	{
+		final WicketTester tester = new WicketTester();
+		tester.startPage(new TestPage(new ChunkedFileList<>(folder.newFolder(), 2), 5));
+		tester.assertContains("test_0");
+		tester.assertContains("test_4");
+		tester.clickLink("append", true);
+		tester.assertContains("test_5");
+		tester.assertContainsNot("test_4");
+	}
+
+	public static class TestPage extends WebPage
+	{
+		public TestPage(final List<Integer> list, int initial)
+		{
+			for (int i = 0; i < initial; i++)
+			{
+				list.add(i);
+			}
+			WebMarkupContainer container = new WebMarkupContainer("container");
+			add(container);
+			final AppendableListView<Integer> underTest = new AppendableListView<Integer>("underTest", list)
+			{
+				@Override
+				protected void populateItem(AppendableListItem item)
+				{
+					item.add(new Label("label", "test_" + item.getModelObject()));
+				}
+			};
+			container.add(underTest);
+			add(new AjaxLink<Void>("append")
+			{
+				@Override
+				public void onClick(AjaxRequestTarget ajax)
+				{
+					underTest.appendNewItemFor(list.size(), ajax);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2016-2021 Carl-Eric Menzel <cmenzel@wicketbuch.de>
+ * and possibly other appendablerepeater contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.wicketbuch.extensions.appendablerepeater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.wicket.AttributeModifier;
+import org.apache.wicket.ajax.AbstractDefaultAjaxBehavior;
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.markup.repeater.Item;
+import org.apache.wicket.markup.repeater.data.ListDataProvider;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.Test;
+
+public class StatelessAppendableListViewTest
+{
+	// the pages are recreated by the tester, so this can't be kept in them
+	private static int sizeCalls = 0;
+
+	@Test
+	public void rendersFirstBatchStatelessly()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = tester.startPage(TestPage.class);
+		assertTrue(page.isPageStateless());
+		tester.assertContains("test_9<");
+		tester.assertContainsNot("test_10<");
+		tester.assertContains("AppendableListView.initStateless\\('container__underTest', '[^']+', '[^']+', " +
+				"'container__underTest_9', 10, true\\);");
+	}
+
+	@Test
+	public void appendsBatchAtOffsetFromClient()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = tester.startPage(TestPage.class);
+		loadMore(tester, page, 10);
+		assertEquals("the page should have been recreated, not reused", 10, page.underTest.size());
+		final String response = tester.getLastResponseAsString();
+		assertTrue(response.contains("AppendableListView.appendStateless('container__underTest', " +
+				"['container__underTest_10', 'container__underTest_11', "));
+		assertEquals("all items should be inserted with one script", 1,
+				response.split("appendStateless").length - 1);
+		tester.assertContains("test_19<");
+		assertFalse("should not render earlier items", response.contains("test_9<"));
+		assertFalse(response.contains("test_20<"));
+		assertTrue(response.contains("AppendableListView.statelessLoaded('container__underTest', 20, true);"));
+	}
+
+	@Test
+	public void appendsLastBatch()
+	{
+		final WicketTester tester = new WicketTester();
+		final TestPage page = tester.startPage(TestPage.class);
+		loadMore(tester, page, 20);
+		tester.assertContains("test_24<");
+		tester.assertContains("AppendableListView.statelessLoaded\\('container__underTest', 25, false\\);");
+		loadMore(tester, page, 25);
+		tester.assertContainsNot("appendStateless");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEmptyBatches()
+	{
+		// components need an application
+		new WicketTester();
+		new StatelessAppendableListView<Integer>("underTest", new ListDataProvider<>(), 0)
+		{
+			@Override
+			protected void populateItem(Item<Integer> item)
+			{
+			}
+		};
+	}
+
+	@Test
+	public void countsItemsOncePerRequest()
+	{
+		final WicketTester tester = new WicketTester();
+		sizeCalls = 0;
+		final TestPage page = tester.startPage(TestPage.class);
+		assertEquals(1, sizeCalls);
+		sizeCalls = 0;
+		loadMore(tester, page, 10);
+		assertEquals(1, sizeCalls);
+	}
+
+	private static void loadMore(WicketTester tester, TestPage page, long offset)
+	{
+		tester.getRequest().setParameter(StatelessAppendableListView.OFFSET, String.valueOf(offset));
+		tester.executeBehavior(page.underTest.getBehaviors(AbstractDefaultAjaxBehavior.class).get(0));
+	}
+
+	public static class TestPage extends WebPage
+	{
+		final StatelessAppendableListView<Integer> underTest;
+
+		public TestPage()
+		{
+			final List<Integer> list = new ArrayList<>();
+			for (int i = 0; i < 25; i++)
+			{
+				list.add(i);
+			}
+			final WebMarkupContainer container = new WebMarkupContainer("container");
+			add(container);
+			final ListDataProvider<Integer> dataProvider = new ListDataProvider<Integer>(list)
+			{
+				@Override
+				public long size()
+				{
+					sizeCalls++;
+					return super.size();
+				}
+			};
+			underTest = new StatelessAppendableListView<Integer>("underTest", dataProvider, 10)
+			{
+				@Override
+				protected void populateItem(Item<Integer> item)
+				{
+					item.add(new Label("label", item.getModel().map(i -> "test_" + i)));
+				}
+			};
+			container.add(underTest);
+			final WebMarkupContainer loadMore = new WebMarkupContainer("loadMore");
+			loadMore.add(AttributeModifier.replace("onclick", underTest::getLoadMoreScript));
+			add(loadMore);
+		}
+	}
+}